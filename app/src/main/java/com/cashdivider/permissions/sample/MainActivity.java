@@ -1,4 +1,4 @@
-package com.cashdivider.permissions;
+package com.cashdivider.permissions.sample;
 
 import android.Manifest;
 import android.os.Bundle;
@@ -7,6 +7,9 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
+import com.cashdivider.permissions.PermissionTable;
+import com.cashdivider.permissions.PermissionUtils;
+
 public class MainActivity extends AppCompatActivity {
 
     @Override
@@ -41,6 +44,6 @@ public class MainActivity extends AppCompatActivity {
             public void permissionDenied() {
                 Toast.makeText(MainActivity.this, "Denied", Toast.LENGTH_LONG).show();
             }
-        }, Manifest.permission.READ_SMS, Manifest.permission.READ_CONTACTS);
+        }, PermissionTable.READ_SMS | PermissionTable.READ_CONTACTS);
     }
 }
\ No newline at end of file
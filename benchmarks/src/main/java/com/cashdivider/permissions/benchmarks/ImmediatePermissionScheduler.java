@@ -0,0 +1,38 @@
+package com.cashdivider.permissions.benchmarks;
+
+import com.cashdivider.permissions.PermissionScheduler;
+
+/**
+ * Main thread of the benchmarks - every thread is the main thread and posted runnables run right away
+ */
+class ImmediatePermissionScheduler implements PermissionScheduler {
+
+    @Override
+    public boolean isMainThread() {
+        return true;
+    }
+
+    @Override
+    public void post(Runnable runnable) {
+        runnable.run();
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMs) {
+        runnable.run();
+    }
+
+    @Override
+    public void postFrame(Runnable runnable) {
+        runnable.run();
+    }
+
+    @Override
+    public void postIdle(Runnable runnable) {
+        runnable.run();
+    }
+
+    @Override
+    public void remove(Runnable runnable) {
+    }
+}
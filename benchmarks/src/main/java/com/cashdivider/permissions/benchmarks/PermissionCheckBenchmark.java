@@ -0,0 +1,146 @@
+package com.cashdivider.permissions.benchmarks;
+
+import com.cashdivider.permissions.PermissionFlow;
+import com.cashdivider.permissions.PermissionFuture;
+import com.cashdivider.permissions.PermissionIndex;
+import com.cashdivider.permissions.PermissionResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Permission checks of PermissionFlow, for one and several permissions, granted and denied, cached and not
+ *
+ *  Cached - the grant states are read from the platform once, then answered by the state cache
+ *  (string lookups for the String... checks, PermissionTable bits for the mask checks).
+ *  Uncached - the cache is invalidated before each check, as after coming back from background,
+ *  so each permission is read from the platform (the invalidation is part of the measure).
+ *  Denied checkPermission runs the whole request - no message, so no rationale, the stub platform denies synchronously.
+ *
+ *  Run with -prof gc for the bytes allocated per op (gc.alloc.rate.norm)
+ */
+@State(Scope.Thread)
+public class PermissionCheckBenchmark {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_SMS = "android.permission.READ_SMS";
+    private static final String RECEIVE_SMS = "android.permission.RECEIVE_SMS";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    private static final String[] TABLE_PERMISSIONS = {CAMERA, READ_SMS, RECEIVE_SMS, READ_CONTACTS};
+    private static final String[] TABLE_GROUPS = {"android.permission-group.CAMERA", "android.permission-group.SMS", "android.permission-group.CONTACTS"};
+    private static final int[] TABLE_PERMISSION_GROUPS = {0, 1, 1, 2};
+
+    public enum GrantState {
+        GRANTED,
+        DENIED
+    }
+
+    @Param({"1", "3"})
+    public int permissionCount;
+
+    @Param({"GRANTED", "DENIED"})
+    public GrantState state;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private final Object host = new Object();
+    private PermissionFlow flow;
+    private String[] permissions;
+    private long permissionMask;
+    private PermissionFlow.GrantCallback grantCallback;
+    private PermissionFlow.ResultCallback resultCallback;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        PermissionIndex.register(TABLE_PERMISSIONS, TABLE_GROUPS, TABLE_PERMISSION_GROUPS);
+
+        permissions = Arrays.copyOfRange(TABLE_PERMISSIONS, 0, permissionCount);
+        permissionMask = (1L << permissionCount) - 1;
+        Set<String> grantedPermissions = state == GrantState.GRANTED
+                ? new HashSet<>(Arrays.asList(permissions))
+                : Collections.<String>emptySet();
+        flow = new PermissionFlow(new StubPermissionPlatform(grantedPermissions), new ImmediatePermissionScheduler());
+
+        grantCallback = new PermissionFlow.GrantCallback() {
+            @Override
+            public void permissionGranted() {
+                blackhole.consume(true);
+            }
+
+            @Override
+            public void permissionDenied() {
+                blackhole.consume(false);
+            }
+        };
+        resultCallback = new PermissionFlow.ResultCallback() {
+            @Override
+            public void onPermissionResult(PermissionResult result) {
+                blackhole.consume(result);
+            }
+        };
+
+        // Cache filled
+        flow.isPermissionAlreadyApproved(host, permissions);
+    }
+
+    private void invalidateIfUncached() {
+        if (!cached) {
+            flow.invalidatePermissionCache();
+        }
+    }
+
+    @Benchmark
+    public boolean isPermissionAlreadyApproved() {
+        invalidateIfUncached();
+        return flow.isPermissionAlreadyApproved(host, permissions);
+    }
+
+    @Benchmark
+    public boolean isPermissionAlreadyApprovedMask() {
+        invalidateIfUncached();
+        return flow.isPermissionAlreadyApproved(host, permissionMask);
+    }
+
+    @Benchmark
+    public void checkPermission() {
+        invalidateIfUncached();
+        flow.checkPermission(host, null, null, grantCallback, permissions);
+    }
+
+    @Benchmark
+    public void checkPermissionMask() {
+        invalidateIfUncached();
+        flow.checkPermission(host, null, null, grantCallback, permissionMask);
+    }
+
+    /**
+     * Same check with a PermissionResult created for the callback
+     */
+    @Benchmark
+    public void checkPermissionResult() {
+        invalidateIfUncached();
+        flow.checkPermission(host, null, null, resultCallback, permissions);
+    }
+
+    /**
+     * PermissionResult created from the grant states, in a completed future
+     *
+     * @return
+     */
+    @Benchmark
+    public PermissionFuture checkPermissionAsync() {
+        invalidateIfUncached();
+        return flow.checkPermissionAsync(host, permissions);
+    }
+}
@@ -0,0 +1,100 @@
+package com.cashdivider.permissions.benchmarks;
+
+import com.cashdivider.permissions.PermissionPlatform;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Platform of the benchmarks - fixed grant states instead of checkSelfPermission, system requests answered
+ * synchronously with the same states (denied permissions stay denied, never permanently), dialogs continued
+ */
+class StubPermissionPlatform implements PermissionPlatform {
+
+    private final Set<String> grantedPermissions;
+
+    /**
+     * @param grantedPermissions - states returned for every check and request
+     */
+    StubPermissionPlatform(Set<String> grantedPermissions) {
+        this.grantedPermissions = grantedPermissions;
+    }
+
+    @Override
+    public boolean hasRuntimePermissions() {
+        return true;
+    }
+
+    @Override
+    public boolean isPermissionGranted(Object context, String permission) {
+        return grantedPermissions.contains(permission);
+    }
+
+    @Override
+    public Set<String> getGrantedPermissions(Object context, String[] permissions) {
+        Set<String> granted = new HashSet<>();
+        for (String permission : permissions) {
+            if (grantedPermissions.contains(permission)) {
+                granted.add(permission);
+            }
+        }
+        return granted;
+    }
+
+    @Override
+    public String getHostKey(Object host) {
+        return "BenchmarkActivity#1";
+    }
+
+    @Override
+    public Object getRootView(Object host) {
+        return null;
+    }
+
+    @Override
+    public boolean shouldShowRequestPermissionRationale(Object host, String permission) {
+        return false;
+    }
+
+    @Override
+    public void requestPermission(Object host, String permission, RequestListener requestListener) {
+        requestPermissions(host, new String[]{permission}, requestListener);
+    }
+
+    @Override
+    public void requestPermissions(Object host, String[] permissions, RequestListener requestListener) {
+        Set<String> granted = new HashSet<>();
+        Set<String> denied = new HashSet<>();
+        for (String permission : permissions) {
+            if (grantedPermissions.contains(permission)) {
+                granted.add(permission);
+            } else {
+                denied.add(permission);
+            }
+        }
+        requestListener.onPermissionsChecked(granted, denied, Collections.<String>emptySet());
+    }
+
+    @Override
+    public void showRationaleDialog(Object host, String message, DialogCallback dialogCallback) {
+        dialogCallback.onContinue();
+    }
+
+    @Override
+    public void showSettingsDialog(Object host, String message, DialogCallback dialogCallback) {
+        dialogCallback.onCancel(true);
+    }
+
+    @Override
+    public void releaseDialog(Object host, boolean cancelPending) {
+    }
+
+    @Override
+    public void showSettingsSnackbar(Object rootView, String message, Object request) {
+    }
+
+    @Override
+    public void openSettings(Object context) {
+    }
+}
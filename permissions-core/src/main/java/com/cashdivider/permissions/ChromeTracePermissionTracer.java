@@ -0,0 +1,138 @@
+package com.cashdivider.permissions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracer recording the sections in memory and exporting them as Chrome trace-event JSON,
+ * readable by chrome://tracing and Perfetto. Plain Java - usable in JVM tests
+ *
+ *  Thread safe. Events are kept until clear(), max MAX_EVENTS (next ones are dropped)
+ */
+public class ChromeTracePermissionTracer implements PermissionTracer {
+
+    public static final int MAX_EVENTS = 100000;
+
+    private static final String CATEGORY = "permissions";
+
+    private final List<Event> events = new ArrayList<>(); // Guarded by events
+    private final long originNanos = System.nanoTime();
+
+    @Override
+    public void beginSection(String name) {
+        record('B', name, 0);
+    }
+
+    @Override
+    public void endSection() {
+        record('E', null, 0);
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+        record('b', name, cookie);
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+        record('e', name, cookie);
+    }
+
+    public int getEventCount() {
+        synchronized (events) {
+            return events.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (events) {
+            events.clear();
+        }
+    }
+
+    /**
+     * Writing the recorded events as a Chrome trace-event JSON object
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeTo(Writer writer) throws IOException {
+        List<Event> eventsToWrite;
+        synchronized (events) {
+            eventsToWrite = new ArrayList<>(events);
+        }
+
+        writer.write("{\"traceEvents\":[");
+        for (int i = 0; i < eventsToWrite.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            eventsToWrite.get(i).writeTo(writer);
+        }
+        writer.write("],\"displayTimeUnit\":\"ms\"}");
+        writer.flush();
+    }
+
+    private void record(char phase, String name, int cookie) {
+        Event event = new Event(phase, name, cookie, (System.nanoTime() - originNanos) / 1000, Thread.currentThread().getId());
+        synchronized (events) {
+            if (events.size() < MAX_EVENTS) {
+                events.add(event);
+            }
+        }
+    }
+
+    private static class Event {
+
+        final char phase;
+        final String name;
+        final int cookie;
+        final long timestampMicros;
+        final long threadId;
+
+        Event(char phase, String name, int cookie, long timestampMicros, long threadId) {
+            this.phase = phase;
+            this.name = name;
+            this.cookie = cookie;
+            this.timestampMicros = timestampMicros;
+            this.threadId = threadId;
+        }
+
+        void writeTo(Writer writer) throws IOException {
+            writer.write("{\"ph\":\"");
+            writer.write(phase);
+            writer.write("\",\"ts\":");
+            writer.write(Long.toString(timestampMicros));
+            writer.write(",\"pid\":1,\"tid\":");
+            writer.write(Long.toString(threadId));
+            if (name != null) {
+                writer.write(",\"name\":");
+                writeString(writer, name);
+            }
+            if (phase == 'b' || phase == 'e') {
+                writer.write(",\"cat\":\"" + CATEGORY + "\",\"id\":\"0x");
+                writer.write(Integer.toHexString(cookie));
+                writer.write('"');
+            }
+            writer.write('}');
+        }
+
+        private static void writeString(Writer writer, String value) throws IOException {
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
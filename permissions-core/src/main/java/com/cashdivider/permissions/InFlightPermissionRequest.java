@@ -0,0 +1,339 @@
+package com.cashdivider.permissions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Permission request shared by all the callers asking for the same or overlapping permissions
+ *
+ *  The first caller host (activity) and rootView are used for the rationale dialog/snack-bar,
+ *  the messages of the callers are combined. When the host is recreated (configuration change)
+ *  the request waits for the new instance and the callers of the old instance can be replaced.
+ *  Hosts are opaque - only their key (PermissionPlatform.getHostKey) and instance identity are used.
+ *
+ *  State machine in PermissionRequestState.
+ *  Callers and permissions are not thread safe - guarded by the PermissionFlow request lock
+ */
+class InFlightPermissionRequest extends PermissionRequestState {
+
+    volatile Object host; // null while the host is recreated
+    volatile Object rootView;
+    final long startNanos = System.nanoTime();
+
+    private final String hostKey;
+    private final boolean hasRootView;
+
+    private final Set<String> permissions = new LinkedHashSet<>();
+    private final Set<String> messages = new LinkedHashSet<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private boolean collecting = false;
+    int dispatchAttempts = 0; // Main thread only
+    String[] promptPermissions = null; // Sent to the platform, not answered yet - guarded by the PermissionFlow request lock
+    long abandonedMillis = 0; // Resolved before the answer (host finished), monotonic clock
+
+    InFlightPermissionRequest(Object host, String hostKey, Object rootView) {
+        this.host = host;
+        this.rootView = rootView;
+        this.hostKey = hostKey;
+        this.hasRootView = rootView != null;
+    }
+
+    /**
+     * Host destroyed for a configuration change - waiting for the new instance
+     */
+    void detachHost() {
+        host = null;
+        rootView = null;
+    }
+
+    /**
+     * Checking if the request waits for this (recreated) host
+     *
+     * @param newHostKey
+     * @return
+     */
+    boolean isAwaitingHost(String newHostKey) {
+        return host == null && hostKey.equals(newHostKey);
+    }
+
+    /**
+     * Checking if the open system request asks for any of the permissions
+     *
+     * @param otherPermissions
+     * @return false if no system request is open
+     */
+    boolean isPrompting(String[] otherPermissions) {
+        if (promptPermissions == null) {
+            return false;
+        }
+        for (String permission : otherPermissions) {
+            for (String promptPermission : promptPermissions) {
+                if (promptPermission.equals(permission)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checking if the snack-bar is used - the recreated host must then give its root view
+     *
+     * @return
+     */
+    boolean hasRootView() {
+        return hasRootView;
+    }
+
+    /**
+     * Attaching the recreated host
+     *
+     * @param host
+     * @param rootView - root view of the new instance, null if hasRootView is false
+     */
+    void attachHost(Object host, Object rootView) {
+        this.host = host;
+        this.rootView = rootView;
+    }
+
+    /**
+     * Marking the callers of the host as detached (host recreated) - they are replaced
+     * when the new instance asks again, or still receive the result otherwise
+     *
+     * @param callerHost
+     */
+    void detachWaiters(Object callerHost) {
+        int hostId = System.identityHashCode(callerHost);
+        for (Waiter waiter : waiters) {
+            if (waiter.hostId == hostId) {
+                waiter.detached = true;
+            }
+        }
+    }
+
+    /**
+     * Removing the detached callers replaced by the new instance of their host -
+     * only the ones asking for permissions all part of the new call, the others keep waiting for their result
+     *
+     * @param callerHostKey
+     * @param requestedPermissions - permissions of the new call
+     */
+    void dropDetachedWaiters(String callerHostKey, String[] requestedPermissions) {
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (waiter.detached && waiter.hostKey.equals(callerHostKey) && containsAll(requestedPermissions, waiter.permissions)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean containsAll(String[] permissions, String[] otherPermissions) {
+        for (String otherPermission : otherPermissions) {
+            if (!isEmpty(otherPermission) && !contains(permissions, otherPermission)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(String[] permissions, String permission) {
+        for (String element : permissions) {
+            if (permission.equals(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removing the callers of the finally destroyed host, and the detached callers of its previous instances
+     *
+     * @param callerHost
+     * @param callerHostKey
+     * @return true if any caller was removed
+     */
+    boolean dropWaiters(Object callerHost, String callerHostKey) {
+        int hostId = System.identityHashCode(callerHost);
+        boolean dropped = false;
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (waiter.hostId == hostId || (waiter.detached && waiter.hostKey.equals(callerHostKey))) {
+                iterator.remove();
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    boolean hasWaiters() {
+        return !waiters.isEmpty();
+    }
+
+    int getWaiterCount() {
+        return waiters.size();
+    }
+
+    /**
+     * Adding a caller, the requested permissions and message are merged into this request
+     *
+     * @param callerHost
+     * @param callerHostKey
+     * @param message
+     * @param resultCallback
+     * @param requestedPermissions
+     */
+    void addWaiter(Object callerHost, String callerHostKey, String message, PermissionFlow.ResultCallback resultCallback, String[] requestedPermissions) {
+        if (!isEmpty(message)) {
+            messages.add(message);
+        }
+        for (String permission : requestedPermissions) {
+            if (!isEmpty(permission)) {
+                permissions.add(permission);
+            }
+        }
+        waiters.add(new Waiter(callerHostKey, System.identityHashCode(callerHost), resultCallback, requestedPermissions));
+    }
+
+    /**
+     * Checking if all the requested permissions are already part of this request
+     *
+     * @param requestedPermissions
+     * @return
+     */
+    boolean covers(String[] requestedPermissions) {
+        for (String permission : requestedPermissions) {
+            if (!isEmpty(permission) && !permissions.contains(permission)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Requested permissions not yet part of this request - the ones a joining caller adds
+     *
+     * @param requestedPermissions
+     * @return
+     */
+    String[] getUncoveredPermissions(String[] requestedPermissions) {
+        List<String> uncoveredPermissions = new ArrayList<>();
+        for (String permission : requestedPermissions) {
+            if (!isEmpty(permission) && !permissions.contains(permission)) {
+                uncoveredPermissions.add(permission);
+            }
+        }
+        return uncoveredPermissions.toArray(new String[uncoveredPermissions.size()]);
+    }
+
+    /**
+     * Checking if any of the requested permissions is part of this request
+     *
+     * @param requestedPermissions
+     * @return
+     */
+    boolean overlaps(String[] requestedPermissions) {
+        for (String permission : requestedPermissions) {
+            if (!isEmpty(permission) && permissions.contains(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Batching window - any request can be merged until the window is closed
+     *
+     * @param collecting
+     */
+    void setCollecting(boolean collecting) {
+        this.collecting = collecting;
+    }
+
+    boolean isCollecting() {
+        return collecting;
+    }
+
+    String[] getPermissions() {
+        return permissions.toArray(new String[permissions.size()]);
+    }
+
+    /**
+     * Rationale message - the messages of all the callers, one per paragraph
+     *
+     * @return null if no caller has set a message
+     */
+    String getMessage() {
+        if (messages.isEmpty()) {
+            return null;
+        }
+        StringBuilder message = new StringBuilder();
+        for (String callerMessage : messages) {
+            if (message.length() > 0) {
+                message.append("\n\n");
+            }
+            message.append(callerMessage);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Removing all the callers, each of them must receive the result exactly once
+     *
+     * @return
+     */
+    List<Waiter> takeWaiters() {
+        List<Waiter> takenWaiters = new ArrayList<>(waiters);
+        waiters.clear();
+        return takenWaiters;
+    }
+
+    static boolean isEmpty(String text) {
+        return text == null || text.length() == 0;
+    }
+
+    /**
+     * Caller waiting for the request result
+     *
+     *  The host is not referenced - only its key (surviving recreation) and its instance identity
+     */
+    static class Waiter {
+
+        final String hostKey;
+        final int hostId; // System.identityHashCode of the host instance
+        final PermissionFlow.ResultCallback resultCallback;
+        final String[] permissions;
+        boolean detached = false;
+
+        Waiter(String hostKey, int hostId, PermissionFlow.ResultCallback resultCallback, String[] permissions) {
+            this.hostKey = hostKey;
+            this.hostId = hostId;
+            this.resultCallback = resultCallback;
+            this.permissions = permissions;
+        }
+
+        /**
+         * Creating the result for the permissions of this caller
+         *
+         * @param grantedPermissions
+         * @param permanentlyDeniedPermissions
+         * @return
+         */
+        PermissionResult createResult(Set<String> grantedPermissions, Set<String> permanentlyDeniedPermissions) {
+            long grantedMask = 0;
+            long permanentlyDeniedMask = 0;
+            for (int i = 0; i < permissions.length && i < PermissionResult.MAX_PERMISSIONS; i++) {
+                if (grantedPermissions.contains(permissions[i])) {
+                    grantedMask |= 1L << i;
+                } else if (permanentlyDeniedPermissions.contains(permissions[i])) {
+                    permanentlyDeniedMask |= 1L << i;
+                }
+            }
+            return new PermissionResult(permissions, grantedMask, permanentlyDeniedMask);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.cashdivider.permissions;
+
+/**
+ * Stages of the permission flow reported to the PermissionMetricsListener
+ */
+public enum PermissionEvent {
+    FAST_PATH_HIT,          // Already granted - no request needed
+    RATIONALE_SHOWN,        // Rationale dialog shown before the system dialog
+    RATIONALE_ACCEPTED,     // Rationale dialog answered with continue
+    RATIONALE_CANCELLED,    // Rationale dialog dismissed
+    SYSTEM_PROMPT,          // Dexter request sent
+    GRANTED,                // All the permissions granted
+    DENIED,                 // At least one permission denied
+    PERMANENTLY_DENIED,     // At least one permission denied with "Do not show again"
+    SETTINGS_LAUNCHED,      // Application details settings opened
+    POLICY_DENIED           // Not asked again - cooldown or session budget of the PermissionRequestPolicy
+}
@@ -0,0 +1,1557 @@
+package com.cashdivider.permissions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Permission flow - fast path, shared and queued requests, rationale, system request, result of each caller
+ *
+ *  All the state of the flow (requests, cache, policy, outcomes, listeners) belongs to the instance, the system
+ *  and the UI are reached through the PermissionPlatform and the main thread through the PermissionScheduler.
+ *  PermissionUtils runs one instance on Android, any number can run side by side on a JVM.
+ *  Hosts (activities), contexts and root views are opaque, passed to the platform as they are
+ */
+public class PermissionFlow {
+
+    private static final boolean SHOW_RATIONALE_DIALOG_ON_FIRST = true; // Issue when using false + Dexter 4.0
+
+    private static final int ENGINE_RETRY_DELAY_MS = 100;
+    private static final int ENGINE_MAX_DISPATCH_ATTEMPTS = 10;
+    private static final int PERMISSION_STATE_REVALIDATION_DELAY_MS = 300;
+    private static final long ABANDONED_PROMPT_TIMEOUT_MS = 60000; // Giving up on the answer of an abandoned system request
+    static final int MAX_PENDING_REQUESTS = 64;
+
+    private static final String REQUEST_TRACE_SECTION = "PermissionRequest";
+    private static final String CALLBACK_TRACE_SECTION = "PermissionFlow.executeCallback";
+    private static final String POSTED_CALLBACK_TRACE_SECTION = "PermissionFlow.postedCallback";
+
+    public static final long REQUEST_BATCHING_DISABLED = 0;
+    public static final long REQUEST_BATCHING_ONE_FRAME = -1;
+
+    private static final PermissionTracer NO_TRACER = new PermissionTracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+        }
+
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+        }
+    };
+
+    private final PermissionPlatform platform;
+    private final PermissionScheduler scheduler;
+
+    private final Object requestLock = new Object();
+    private InFlightPermissionRequest activeRequest = null; // Guarded by requestLock
+    private final List<InFlightPermissionRequest> pendingRequests = new ArrayList<>(); // Guarded by requestLock
+    // Resolved when their host finished, their system request still open - guarded by requestLock
+    private final List<InFlightPermissionRequest> abandonedPrompts = new ArrayList<>();
+    private final Runnable abandonedPromptTimeout = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (requestLock) {
+                if (!dropExpiredAbandonedPrompts()) {
+                    return;
+                }
+            }
+            restartActiveRequest();
+        }
+    };
+
+    private final PermissionStateCache permissionStateCache = new PermissionStateCache();
+    private final PermissionOutcomeStore permissionOutcomeStore = new PermissionOutcomeStore();
+    private final PermissionPolicyTable permissionPolicyTable = new PermissionPolicyTable(); // Guarded by requestLock
+    private final PermissionStateObservers permissionStateObservers;
+    private volatile PermissionRequestPolicy requestPolicy = null;
+    private volatile PermissionMetricsListener metricsListener = null;
+    private volatile PermissionTracer permissionTracer = NO_TRACER;
+    private volatile long requestBatchingWindowMs = REQUEST_BATCHING_DISABLED;
+    private volatile boolean permissionGroupExpansionEnabled = false;
+    private volatile PermissionSnapshot permissionSnapshot = null;
+    private final AtomicBoolean permissionSnapshotStarted = new AtomicBoolean(false);
+
+    /**
+     * @param platform - system and UI
+     * @param scheduler - main thread
+     */
+    public PermissionFlow(PermissionPlatform platform, PermissionScheduler scheduler) {
+        this.platform = platform;
+        this.scheduler = scheduler;
+        this.permissionStateObservers = new PermissionStateObservers(scheduler);
+    }
+
+    /**
+     * Checking permission
+     *
+     *  If rootView is null - on rationale will show text as dialog
+     *  If rootView is not null - on rationale will show text as snack bar
+     *  If message is null - will not show any rationale dialog/snack-bar
+     *  If a request for the same/overlapping permissions is in progress - will wait for its result
+     *  If the host is recreated (rotation) - the request continues, calling again from the new instance replaces the old callback
+     *  If the permissions are already granted - the callback runs directly when called from the main thread,
+     *  pass a pre-built String[] (static final) as permissions to avoid any allocation
+     *
+     * @param host - Activity
+     * @param rootView - Root view of the snack-bar
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param grantCallback - Callback for getting permission approved/denied state
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc
+     */
+    public void checkPermission(final Object host, final Object rootView, final String message, final GrantCallback grantCallback, final String... permissions) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.checkPermission");
+        try {
+            if (grantCallback == null) {
+                return;
+            }
+            if (host == null) {
+                executeCallback(grantCallback, false);
+                return;
+            }
+            if (permissions == null) {
+                executeCallback(grantCallback, false);
+                return;
+            }
+            if (permissions.length > PermissionResult.MAX_PERMISSIONS) {
+                executeCallback(grantCallback, false);
+                return;
+            }
+            final long startNanos = getMetricsStartNanos();
+            if (isPermissionAlreadyApproved(host, permissions)) {
+                emitPermissionEvent(PermissionEvent.FAST_PATH_HIT, permissions, startNanos);
+                executeCallback(grantCallback, true);
+                return;
+            }
+
+            enqueuePermissionRequest(host, rootView, message, new GrantCallbackAdapter(grantCallback), permissions);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking permissions given as PermissionTable bits
+     *
+     *  Same flow as checkPermission with the permission strings, the already granted check
+     *  does not look up any string
+     *
+     * @param host - Activity
+     * @param rootView - Root view of the snack-bar
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param grantCallback - Callback for getting permission approved/denied state
+     * @param permissionMask - PermissionTable.READ_SMS | PermissionTable.READ_CONTACTS, etc - denied if empty
+     */
+    public void checkPermission(final Object host, final Object rootView, final String message, final GrantCallback grantCallback, final long permissionMask) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.checkPermission");
+        try {
+            if (grantCallback == null) {
+                return;
+            }
+            if (host == null || permissionMask == 0 || (permissionMask & ~PermissionIndex.get().getAllMask()) != 0) {
+                executeCallback(grantCallback, false);
+                return;
+            }
+            final long startNanos = getMetricsStartNanos();
+            if (isPermissionAlreadyApproved(host, permissionMask)) {
+                if (metricsListener != null) {
+                    emitPermissionEvent(PermissionEvent.FAST_PATH_HIT, PermissionIndex.get().getPermissions(permissionMask), startNanos);
+                }
+                executeCallback(grantCallback, true);
+                return;
+            }
+
+            // Already checked - straight to the request
+            enqueuePermissionRequest(host, rootView, message, new GrantCallbackAdapter(grantCallback), PermissionIndex.get().getPermissions(permissionMask));
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking permissions with a result for each permission
+     *
+     *  Same flow as checkPermission with GrantCallback, but the callback receives
+     *  the granted/permanently denied state of every requested permission from one request
+     *
+     * @param host - Activity
+     * @param rootView - Root view of the snack-bar
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param resultCallback - Callback for getting the state of each permission
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc (max PermissionResult.MAX_PERMISSIONS)
+     */
+    public void checkPermission(final Object host, final Object rootView, final String message, final ResultCallback resultCallback, final String... permissions) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.checkPermission");
+        try {
+            if (resultCallback == null) {
+                return;
+            }
+            if (permissions == null) {
+                executeCallback(resultCallback, PermissionResult.denied(new String[0]));
+                return;
+            }
+            if (host == null || permissions.length > PermissionResult.MAX_PERMISSIONS) {
+                executeCallback(resultCallback, PermissionResult.denied(permissions));
+                return;
+            }
+            final long startNanos = getMetricsStartNanos();
+            if (isPermissionAlreadyApproved(host, permissions)) {
+                emitPermissionEvent(PermissionEvent.FAST_PATH_HIT, permissions, startNanos);
+                executeCallback(resultCallback, PermissionResult.granted(permissions));
+                return;
+            }
+
+            enqueuePermissionRequest(host, rootView, message, resultCallback, permissions);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking permissions without any UI, usable from any thread
+     *
+     *  The result is computed on the calling thread (no main thread hop) and the returned future is already done.
+     *  Permanently denied state is not known without a request - use requestPermissionAsync for it
+     *
+     * @param context - Any context
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc (max PermissionResult.MAX_PERMISSIONS)
+     * @return
+     */
+    public PermissionFuture checkPermissionAsync(final Object context, final String... permissions) {
+        if (permissions == null) {
+            return PermissionFuture.completed(PermissionResult.denied(new String[0]));
+        }
+        return PermissionFuture.completed(getPermissionResult(context, permissions));
+    }
+
+    /**
+     * Requesting permissions, usable from any thread
+     *
+     *  If all the permissions are already granted the returned future is already done,
+     *  otherwise the same flow as checkPermission runs on the main thread with the given host
+     *
+     * @param host - Activity
+     * @param rootView - Root view of the snack-bar
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc (max PermissionResult.MAX_PERMISSIONS)
+     * @return
+     */
+    public PermissionFuture requestPermissionAsync(final Object host, final Object rootView, final String message, final String... permissions) {
+        if (permissions == null) {
+            return PermissionFuture.completed(PermissionResult.denied(new String[0]));
+        }
+        if (host == null || permissions.length > PermissionResult.MAX_PERMISSIONS) {
+            return PermissionFuture.completed(PermissionResult.denied(permissions));
+        }
+        final long startNanos = getMetricsStartNanos();
+        if (isPermissionAlreadyApproved(host, permissions)) {
+            emitPermissionEvent(PermissionEvent.FAST_PATH_HIT, permissions, startNanos);
+            return PermissionFuture.completed(PermissionResult.granted(permissions));
+        }
+
+        final PermissionFuture permissionFuture = new PermissionFuture();
+        final ResultCallback resultCallback = new ResultCallback() {
+            @Override
+            public void onPermissionResult(PermissionResult result) {
+                permissionFuture.complete(result);
+            }
+        };
+        if (scheduler.isMainThread()) {
+            enqueuePermissionRequest(host, rootView, message, resultCallback, permissions);
+        } else {
+            // Run on UI - the rationale dialog and the platform need the main thread
+            scheduler.post(new Runnable() {
+                @Override
+                public void run() {
+                    enqueuePermissionRequest(host, rootView, message, resultCallback, permissions);
+                }
+            });
+        }
+        return permissionFuture;
+    }
+
+    /**
+     * Joining an in-flight request for the same permissions or queueing a new one
+     *
+     *  Other permissions are merged only while the request is not started - once started, its checks and rationale
+     *  work on the permissions it had then
+     *
+     * @param host
+     * @param rootView
+     * @param message
+     * @param resultCallback
+     * @param permissions
+     */
+    private void enqueuePermissionRequest(final Object host, final Object rootView, final String message, final ResultCallback resultCallback, final String[] permissions) {
+        final String hostKey = platform.getHostKey(host);
+        InFlightPermissionRequest requestToStart = null;
+        boolean allowed = true;
+        synchronized (requestLock) {
+            InFlightPermissionRequest joinedRequest = null;
+            if (activeRequest != null
+                    && (activeRequest.isCollecting()
+                    || activeRequest.covers(permissions)
+                    || (activeRequest.getState() == PermissionRequestState.STATE_IDLE && activeRequest.overlaps(permissions)))) {
+                joinedRequest = activeRequest;
+            } else {
+                for (InFlightPermissionRequest pendingRequest : pendingRequests) {
+                    if (pendingRequest.overlaps(permissions)) {
+                        joinedRequest = pendingRequest;
+                        break;
+                    }
+                }
+            }
+
+            final PermissionRequestPolicy policy = requestPolicy;
+            if (policy != null) {
+                // A joining caller is checked only for the permissions it adds to the request
+                String[] checkedPermissions = joinedRequest == null ? permissions : joinedRequest.getUncoveredPermissions(permissions);
+                allowed = checkedPermissions.length == 0
+                        || permissionPolicyTable.isAllowed(policy, checkedPermissions, permissionStateCache.getGrantedMask(), getPolicyClockMillis());
+            }
+            if (allowed && joinedRequest != null) {
+                // Replacing the callers of the previous instance of a recreated host
+                joinedRequest.dropDetachedWaiters(hostKey, permissions);
+                joinedRequest.addWaiter(host, hostKey, message, resultCallback, permissions);
+                return;
+            }
+            if (allowed && (activeRequest == null || pendingRequests.size() < MAX_PENDING_REQUESTS)) {
+                InFlightPermissionRequest request = new InFlightPermissionRequest(host, hostKey, rootView);
+                request.addWaiter(host, hostKey, message, resultCallback, permissions);
+                // Whole request lifetime, ended when resolved
+                permissionTracer.beginAsyncSection(REQUEST_TRACE_SECTION, System.identityHashCode(request));
+                if (activeRequest == null) {
+                    activeRequest = request;
+                    requestToStart = request;
+                    request.setCollecting(requestBatchingWindowMs != REQUEST_BATCHING_DISABLED);
+                } else {
+                    pendingRequests.add(request);
+                }
+                if (requestToStart == null) {
+                    return;
+                }
+            }
+        }
+        if (!allowed) {
+            // Cooldown or budget - cached states, no UI
+            emitPermissionEvent(PermissionEvent.POLICY_DENIED, permissions, getMetricsStartNanos());
+            executeCallback(resultCallback, getPermissionResult(host, permissions));
+            return;
+        }
+        if (requestToStart == null) {
+            // Queue full - denied without asking
+            executeCallback(resultCallback, PermissionResult.denied(permissions));
+            return;
+        }
+        if (requestToStart.isCollecting()) {
+            scheduleBatchedPermissionRequest(requestToStart);
+            return;
+        }
+        startPermissionRequest(requestToStart);
+    }
+
+    /**
+     * Batching the permission requests - the requests made in the same frame/window are merged
+     * into one rationale dialog and one system prompt, each callback receives the result for its own permissions
+     *
+     * @param windowMs - REQUEST_BATCHING_ONE_FRAME, REQUEST_BATCHING_DISABLED or the window length in milliseconds
+     */
+    public void setRequestBatchingWindow(long windowMs) {
+        requestBatchingWindowMs = windowMs;
+    }
+
+    /**
+     * Asking with the system dialog also for the other declared permissions of the requested groups
+     *
+     *  They are granted by the same dialog, so later requests for them do not show any dialog or pause the host.
+     *  Callbacks still receive only the permissions they asked for
+     *
+     * @param enabled
+     */
+    public void setPermissionGroupExpansion(boolean enabled) {
+        permissionGroupExpansionEnabled = enabled;
+    }
+
+    /**
+     * Reading in main thread idle time the state of all the declared permissions of the groups of a feature,
+     * next checks of them are answered from the cache. Nothing is shown to the user
+     *
+     * @param context
+     * @param permissionMask - PermissionTable bits of the feature
+     */
+    public void prefetchPermissionGroups(final Object context, final long permissionMask) {
+        if (context == null || !platform.hasRuntimePermissions()) {
+            return;
+        }
+        final long groupsMask = PermissionGroupPlanner.getGroupsMask(permissionMask & PermissionIndex.get().getAllMask());
+        if (groupsMask == 0) {
+            return;
+        }
+
+        scheduler.postIdle(new Runnable() {
+
+            private long remainingMask = groupsMask;
+
+            @Override
+            public void run() {
+                // One permission per idle pass
+                int index = Long.numberOfTrailingZeros(remainingMask);
+                remainingMask &= remainingMask - 1;
+                isPermissionGranted(context, PermissionIndex.get().getPermission(index));
+                if (remainingMask != 0) {
+                    scheduler.postIdle(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Closing the batching window of the request and starting it
+     *
+     * @param request
+     */
+    private void scheduleBatchedPermissionRequest(final InFlightPermissionRequest request) {
+        final Runnable closeBatchingWindow = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (requestLock) {
+                    request.setCollecting(false);
+                }
+                startPermissionRequest(request);
+            }
+        };
+
+        if (requestBatchingWindowMs != REQUEST_BATCHING_ONE_FRAME) {
+            scheduler.postDelayed(closeBatchingWindow, requestBatchingWindowMs);
+            return;
+        }
+        scheduler.postFrame(closeBatchingWindow);
+    }
+
+    /**
+     * Starting the request - showing the rationale dialog before the system request
+     *
+     * @param request
+     */
+    private void startPermissionRequest(final InFlightPermissionRequest request) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.startPermissionRequest");
+        try {
+            if (request == null) {
+                return;
+            }
+
+            final Object host = request.host;
+            if (host == null) {
+                // Host recreated - started again when the new instance is attached
+                return;
+            }
+            final String[] permissions;
+            final String message;
+            synchronized (requestLock) {
+                if (request.getState() == PermissionRequestState.STATE_IDLE && isAskedByAbandonedPrompt(request)) {
+                    // Started again once that system request is answered - not two system dialogs for a permission
+                    scheduler.remove(abandonedPromptTimeout);
+                    scheduler.postDelayed(abandonedPromptTimeout, ABANDONED_PROMPT_TIMEOUT_MS);
+                    return;
+                }
+                // Joins closed with the move, the snapshot is the whole request
+                if (!request.moveState(PermissionRequestState.STATE_IDLE, PermissionRequestState.STATE_RATIONALE)) {
+                    // Already started
+                    return;
+                }
+                permissions = request.getPermissions();
+                message = request.getMessage();
+            }
+            if (isPermissionAlreadyApproved(host, permissions)) {
+                // Granted while the request was queued
+                resolvePermissionRequest(request, new HashSet<>(Arrays.asList(permissions)), Collections.<String>emptySet());
+                return;
+            }
+            if (isPermanentlyDeniedBefore(host, permissions)) {
+                // No rationale, the request still goes to the system - it answers without any dialog if they are
+                // still permanently denied, then the settings dialog/snack-bar is shown from its answer
+                dispatchPermissionRequest(request);
+                return;
+            }
+
+            final PermissionPlatform.DialogCallback dialogCallback = new PermissionPlatform.DialogCallback() {
+                @Override
+                public void onContinue() {
+                    if (!InFlightPermissionRequest.isEmpty(message)) {
+                        emitPermissionEvent(PermissionEvent.RATIONALE_ACCEPTED, request);
+                    }
+                    dispatchPermissionRequest(request);
+                }
+
+                @Override
+                public void onCancel(boolean userCancelled) {
+                    emitPermissionEvent(PermissionEvent.RATIONALE_CANCELLED, request);
+                    if (userCancelled) {
+                        // Declined - dismissed dialogs do not count against the permissions
+                        recordPolicyDenials(permissions);
+                    }
+                    resolvePermissionRequest(request, Collections.<String>emptySet(), Collections.<String>emptySet());
+                }
+            };
+            if (SHOW_RATIONALE_DIALOG_ON_FIRST) {
+                if (!InFlightPermissionRequest.isEmpty(message)) {
+                    emitPermissionEvent(PermissionEvent.RATIONALE_SHOWN, request);
+                }
+                showPermissionRationale(host, message, dialogCallback);
+            } else {
+                dialogCallback.onContinue();
+            }
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking if the missing permissions were permanently denied in a previous session - the rationale dialog is skipped
+     *
+     *  Only a hint: the stored outcome can be older than the system state (backup restored on another device,
+     *  permissions reset by the user), where shouldShowRequestPermissionRationale is false as well
+     *
+     * @param host
+     * @param permissions
+     * @return false if any missing permission can still be asked with a rationale
+     */
+    private boolean isPermanentlyDeniedBefore(final Object host, final String[] permissions) {
+        boolean permanentlyDenied = false;
+        for (String permission : permissions) {
+            if (isPermissionGranted(host, permission)) {
+                continue;
+            }
+            if (permissionOutcomeStore.getOutcome(permission) != PermissionOutcomeStore.OUTCOME_PERMANENTLY_DENIED
+                    || platform.shouldShowRequestPermissionRationale(host, permission)) {
+                return false;
+            }
+            permanentlyDenied = true;
+        }
+        return permanentlyDenied;
+    }
+
+    /**
+     * Sending the request to the platform, the permissions can not be merged anymore
+     *
+     * @param request
+     */
+    private void dispatchPermissionRequest(final InFlightPermissionRequest request) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.dispatchPermissionRequest");
+        try {
+            final String[] permissions;
+            final String message;
+            synchronized (requestLock) {
+                if (!request.moveState(PermissionRequestState.STATE_RATIONALE, PermissionRequestState.STATE_PROMPTING)
+                        && request.getState() != PermissionRequestState.STATE_PROMPTING) {
+                    // Resolved or restarted meanwhile
+                    return;
+                }
+                if (request.host == null) {
+                    // Host recreated - started again when the new instance is attached
+                    request.moveState(PermissionRequestState.STATE_PROMPTING, PermissionRequestState.STATE_IDLE);
+                    return;
+                }
+                permissions = request.getPermissions();
+                message = request.getMessage();
+            }
+            request.dispatchAttempts++;
+
+            if (permissions.length == 0) {
+                resolvePermissionRequest(request, Collections.<String>emptySet(), Collections.<String>emptySet());
+                return;
+            }
+            emitPermissionEvent(PermissionEvent.SYSTEM_PROMPT, request);
+            if (request.dispatchAttempts == 1) {
+                // Retries of a busy platform are the same prompt
+                synchronized (requestLock) {
+                    permissionPolicyTable.recordPrompt();
+                }
+            }
+
+            /*
+                Same group permissions together, already granted groups first
+             */
+            final String[] plannedPermissions = PermissionGroupPlanner.plan(permissions, permissionStateCache.getGrantedMask(), permissionGroupExpansionEnabled);
+            checkPermissions(request, message, plannedPermissions);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking the permissions with the platform - single permission or multiple permissions request
+     *
+     * @param request
+     * @param message
+     * @param permissions
+     */
+    private void checkPermissions(final InFlightPermissionRequest request, final String message, final String[] permissions) {
+
+        final Object host = request.host;
+
+        PermissionPlatform.RequestListener requestListener = new PermissionPlatform.RequestListener() {
+            @Override
+            public void onPermissionsChecked(Set<String> grantedPermissions, Set<String> deniedPermissions, Set<String> permanentlyDeniedPermissions) {
+                onPromptClosed(request);
+                for (String permission : grantedPermissions) {
+                    updatePermissionState(permission, true, false);
+                }
+                for (String permission : deniedPermissions) {
+                    updatePermissionState(permission, false, permanentlyDeniedPermissions.contains(permission));
+                }
+                recordPolicyOutcomes(grantedPermissions, deniedPermissions);
+
+                // Granted/Denied for each of the callers
+                resolvePermissionRequest(request, grantedPermissions, permanentlyDeniedPermissions);
+
+                if (deniedPermissions.isEmpty() || InFlightPermissionRequest.isEmpty(message)) {
+                    return;
+                }
+                final Object rootView = request.rootView;
+                if (rootView != null) {
+                    // Snack bar on any denied
+                    showSettingsSnackbar(rootView, message, request);
+                } else if (!permanentlyDeniedPermissions.isEmpty()) {
+                    /*
+                        Case for permanently denied and no Snack Bar
+                     */
+                    showSettingsDialog(request.host, message, request);
+                }
+            }
+
+            @Override
+            public void onPermissionRationaleShouldBeShown(final PermissionPlatform.RationaleToken rationaleToken) {
+                if (SHOW_RATIONALE_DIALOG_ON_FIRST) {
+                    rationaleToken.continuePermissionRequest();
+                    return;
+                }
+                // Show Dialog Rationale
+                showPermissionRationale(host, message, new PermissionPlatform.DialogCallback() {
+                    @Override
+                    public void onContinue() {
+                        rationaleToken.continuePermissionRequest();
+                    }
+
+                    @Override
+                    public void onCancel(boolean userCancelled) {
+                        rationaleToken.cancelPermissionRequest();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(boolean requestOngoing) {
+                onPromptClosed(request);
+                // Retrying the request when the platform is still busy with the previous one
+                if (requestOngoing && request.dispatchAttempts < ENGINE_MAX_DISPATCH_ATTEMPTS) {
+                    scheduler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            dispatchPermissionRequest(request);
+                        }
+                    }, ENGINE_RETRY_DELAY_MS);
+                    return;
+                }
+                resolvePermissionRequest(request, Collections.<String>emptySet(), Collections.<String>emptySet());
+            }
+        };
+
+        synchronized (requestLock) {
+            request.promptPermissions = permissions;
+        }
+        if (permissions.length == 1) {
+            platform.requestPermission(host, permissions[0], requestListener);
+        } else {
+            platform.requestPermissions(host, permissions, requestListener);
+        }
+    }
+
+    /**
+     * System request answered (or failed) - the active request waiting for it, if it was abandoned, is started again
+     *
+     * @param request
+     */
+    private void onPromptClosed(final InFlightPermissionRequest request) {
+        synchronized (requestLock) {
+            request.promptPermissions = null;
+            if (!abandonedPrompts.remove(request)) {
+                return;
+            }
+        }
+        restartActiveRequest();
+    }
+
+    /**
+     * Checking if the system request of the request would ask a permission of an abandoned one still open, requestLock held
+     *
+     * @param request
+     * @return
+     */
+    private boolean isAskedByAbandonedPrompt(InFlightPermissionRequest request) {
+        if (abandonedPrompts.isEmpty()) {
+            return false;
+        }
+        dropExpiredAbandonedPrompts();
+        String[] plannedPermissions = PermissionGroupPlanner.plan(request.getPermissions(), permissionStateCache.getGrantedMask(), permissionGroupExpansionEnabled);
+        for (InFlightPermissionRequest abandonedRequest : abandonedPrompts) {
+            if (abandonedRequest.isPrompting(plannedPermissions)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgetting the abandoned system requests not answered within ABANDONED_PROMPT_TIMEOUT_MS, requestLock held
+     *
+     * @return true if any was dropped
+     */
+    private boolean dropExpiredAbandonedPrompts() {
+        long nowMillis = getPolicyClockMillis();
+        boolean dropped = false;
+        Iterator<InFlightPermissionRequest> iterator = abandonedPrompts.iterator();
+        while (iterator.hasNext()) {
+            if (nowMillis - iterator.next().abandonedMillis >= ABANDONED_PROMPT_TIMEOUT_MS) {
+                iterator.remove();
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Starting again the active request held back by an abandoned system request
+     */
+    private void restartActiveRequest() {
+        final InFlightPermissionRequest requestToRestart;
+        synchronized (requestLock) {
+            if (activeRequest == null || activeRequest.host == null || activeRequest.isCollecting()
+                    || activeRequest.getState() != PermissionRequestState.STATE_IDLE) {
+                return;
+            }
+            requestToRestart = activeRequest;
+        }
+        // Run on UI - after the current platform request is released
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                startPermissionRequest(requestToRestart);
+            }
+        });
+    }
+
+    /**
+     * Showing the snack-bar with the button opening the application settings
+     *
+     * @param rootView
+     * @param message
+     * @param request
+     */
+    private void showSettingsSnackbar(final Object rootView, final String message, final InFlightPermissionRequest request) {
+        platform.showSettingsSnackbar(rootView, message, metricsListener != null ? request : null);
+    }
+
+    /**
+     * Settings button of the snack-bar clicked - called by the platform
+     *
+     * @param context
+     * @param request - as given to PermissionPlatform.showSettingsSnackbar
+     */
+    public void onSettingsAction(Object context, Object request) {
+        emitPermissionEvent(PermissionEvent.SETTINGS_LAUNCHED, request instanceof InFlightPermissionRequest ? (InFlightPermissionRequest) request : null);
+        platform.openSettings(context);
+    }
+
+    /**
+     * Sending the result to every caller of the request and starting the next queued request
+     *
+     * @param request
+     * @param grantedPermissions
+     * @param permanentlyDeniedPermissions
+     */
+    private void resolvePermissionRequest(final InFlightPermissionRequest request, final Set<String> grantedPermissions, final Set<String> permanentlyDeniedPermissions) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.resolvePermissionRequest");
+        try {
+            if (!request.markResolved()) {
+                // Exactly once - late platform/dialog callbacks are ignored
+                return;
+            }
+            tracer.endAsyncSection(REQUEST_TRACE_SECTION, System.identityHashCode(request));
+
+            final List<InFlightPermissionRequest.Waiter> waiters;
+            InFlightPermissionRequest nextRequest = null;
+            String[] permissions = null;
+            synchronized (requestLock) {
+                waiters = request.takeWaiters();
+                if (metricsListener != null && !waiters.isEmpty()) {
+                    permissions = request.getPermissions();
+                }
+                if (activeRequest == request) {
+                    if (!pendingRequests.isEmpty()) {
+                        nextRequest = pendingRequests.remove(0);
+                    }
+                    activeRequest = nextRequest;
+                } else {
+                    pendingRequests.remove(request);
+                }
+            }
+
+            if (permissions != null) {
+                if (grantedPermissions.containsAll(Arrays.asList(permissions))) {
+                    emitPermissionEvent(PermissionEvent.GRANTED, permissions, request.startNanos);
+                } else if (!permanentlyDeniedPermissions.isEmpty()) {
+                    emitPermissionEvent(PermissionEvent.PERMANENTLY_DENIED, permissions, request.startNanos);
+                } else {
+                    emitPermissionEvent(PermissionEvent.DENIED, permissions, request.startNanos);
+                }
+            }
+
+            for (InFlightPermissionRequest.Waiter waiter : waiters) {
+                executeCallback(waiter.resultCallback, waiter.createResult(grantedPermissions, permanentlyDeniedPermissions));
+            }
+
+            if (nextRequest != null) {
+                final InFlightPermissionRequest requestToStart = nextRequest;
+                // Run on UI - after the current platform request is released
+                scheduler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        startPermissionRequest(requestToStart);
+                    }
+                });
+            }
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Host destroyed - on configuration change the requests wait for the new instance,
+     * on final destroy its callers are dropped and the requests it was hosting are cancelled.
+     * A request already sent to the system is resolved once nobody waits for it anymore - its late answer
+     * still updates the cached states, the next queued request does not wait for it
+     *
+     * @param host
+     * @param changingConfigurations - true if a new instance is created right away
+     */
+    public void onHostDestroyed(final Object host, final boolean changingConfigurations) {
+        final String hostKey = platform.getHostKey(host);
+        final List<InFlightPermissionRequest> requestsToCancel = new ArrayList<>();
+        synchronized (requestLock) {
+            List<InFlightPermissionRequest> requests = new ArrayList<>(pendingRequests);
+            if (activeRequest != null) {
+                requests.add(activeRequest);
+            }
+            for (InFlightPermissionRequest request : requests) {
+                boolean droppedWaiters = false;
+                if (changingConfigurations) {
+                    request.detachWaiters(host);
+                } else {
+                    droppedWaiters = request.dropWaiters(host, hostKey);
+                }
+                boolean hosted = request.host == host || request.isAwaitingHost(hostKey);
+                if (request.host == host) {
+                    request.detachHost();
+                    // Rationale dialog released without answer - shown again by the new instance
+                    request.moveState(PermissionRequestState.STATE_RATIONALE, PermissionRequestState.STATE_IDLE);
+                }
+                if (changingConfigurations) {
+                    continue;
+                }
+                if (!request.isDispatched()) {
+                    if (request.host == null || !request.hasWaiters()) {
+                        requestsToCancel.add(request);
+                    }
+                } else if (!request.hasWaiters() && (hosted || droppedWaiters)) {
+                    // Last waiting host gone - the system answer may never come back, the queue goes on.
+                    // Requests asking the same permissions still wait for it
+                    if (request.promptPermissions != null) {
+                        request.abandonedMillis = getPolicyClockMillis();
+                        abandonedPrompts.add(request);
+                    }
+                    requestsToCancel.add(request);
+                }
+            }
+        }
+
+        // Dismissing the rationale dialog - kept pending on configuration change
+        platform.releaseDialog(host, !changingConfigurations);
+
+        for (InFlightPermissionRequest request : requestsToCancel) {
+            resolvePermissionRequest(request, Collections.<String>emptySet(), Collections.<String>emptySet());
+        }
+    }
+
+    /**
+     * Host resumed - attaching it to the requests waiting for its new instance, showing again
+     * the rationale dialog of the active request and checking again the observed permissions
+     *
+     * @param host
+     */
+    public void onHostResumed(final Object host) {
+        InFlightPermissionRequest requestToRestart = null;
+        synchronized (requestLock) {
+            if (isAwaitingHost(activeRequest) || isAwaitingHost(pendingRequests)) {
+                String hostKey = platform.getHostKey(host);
+                for (InFlightPermissionRequest request : pendingRequests) {
+                    if (request.isAwaitingHost(hostKey)) {
+                        request.attachHost(host, request.hasRootView() ? platform.getRootView(host) : null);
+                    }
+                }
+                if (activeRequest != null && activeRequest.isAwaitingHost(hostKey)) {
+                    activeRequest.attachHost(host, activeRequest.hasRootView() ? platform.getRootView(host) : null);
+                    if (activeRequest.getState() == PermissionRequestState.STATE_IDLE && !activeRequest.isCollecting()) {
+                        requestToRestart = activeRequest;
+                    }
+                }
+            }
+        }
+        if (requestToRestart != null) {
+            startPermissionRequest(requestToRestart);
+        }
+        schedulePermissionStateRevalidation();
+    }
+
+    /**
+     * Application back from background - the user could have changed the permissions from Settings,
+     * the cached states are dropped and a new policy session starts
+     */
+    public void onForeground() {
+        permissionStateCache.invalidate();
+        synchronized (requestLock) {
+            permissionPolicyTable.resetSession();
+        }
+    }
+
+    private static boolean isAwaitingHost(InFlightPermissionRequest request) {
+        return request != null && request.host == null;
+    }
+
+    private static boolean isAwaitingHost(List<InFlightPermissionRequest> requests) {
+        for (InFlightPermissionRequest request : requests) {
+            if (request.host == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Showing dialog permission rationale
+     *
+     * @param host
+     * @param message
+     * @param dialogCallback
+     */
+    private void showPermissionRationale(final Object host, final String message, final PermissionPlatform.DialogCallback dialogCallback) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.showPermissionRationale");
+        try {
+            if (host == null) {
+                return;
+            }
+            if (InFlightPermissionRequest.isEmpty(message)) {
+                dialogCallback.onContinue();
+                return;
+            }
+
+            platform.showRationaleDialog(host, message, dialogCallback);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Showing the settings dialog of permanently denied permissions
+     *
+     * @param host
+     * @param message
+     * @param request - Request that was permanently denied
+     */
+    private void showSettingsDialog(final Object host, final String message, final InFlightPermissionRequest request) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.showSettingsDialog");
+        try {
+            if (host == null) {
+                return;
+            }
+            if (InFlightPermissionRequest.isEmpty(message)) {
+                return;
+            }
+
+            platform.showSettingsDialog(host, message, new PermissionPlatform.DialogCallback() {
+                @Override
+                public void onContinue() {
+                    emitPermissionEvent(PermissionEvent.SETTINGS_LAUNCHED, request);
+                    platform.openSettings(host);
+                }
+
+                @Override
+                public void onCancel(boolean userCancelled) {
+                }
+            });
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Replacing the tracer of the permission flow stages (ChromeTracePermissionTracer for JVM tests),
+     * null for no tracing. Set it before any request - sections are ended by the tracer that began them
+     *
+     * @param tracer
+     */
+    public void setPermissionTracer(PermissionTracer tracer) {
+        permissionTracer = tracer != null ? tracer : NO_TRACER;
+    }
+
+    /**
+     * Limiting the new requests for the permissions the user has denied (cooldown with backoff, prompts per session),
+     * null for no limit. Requests not allowed get the cached states right away, without any UI
+     *
+     * @param policy
+     */
+    public void setPermissionRequestPolicy(PermissionRequestPolicy policy) {
+        requestPolicy = policy;
+    }
+
+    private static long getPolicyClockMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private void recordPolicyDenials(String[] permissions) {
+        long nowMillis = getPolicyClockMillis();
+        synchronized (requestLock) {
+            for (String permission : permissions) {
+                permissionPolicyTable.recordDenied(permission, nowMillis);
+            }
+        }
+    }
+
+    private void recordPolicyOutcomes(Set<String> grantedPermissions, Set<String> deniedPermissions) {
+        long nowMillis = getPolicyClockMillis();
+        synchronized (requestLock) {
+            for (String permission : grantedPermissions) {
+                permissionPolicyTable.recordGranted(permission);
+            }
+            for (String permission : deniedPermissions) {
+                permissionPolicyTable.recordDenied(permission, nowMillis);
+            }
+        }
+    }
+
+    /**
+     * Registering the listener for the permission flow stages, null to remove it
+     *
+     * @param permissionMetricsListener
+     */
+    public void setPermissionMetricsListener(PermissionMetricsListener permissionMetricsListener) {
+        metricsListener = permissionMetricsListener;
+    }
+
+    private long getMetricsStartNanos() {
+        return metricsListener != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reporting a stage of the request
+     *
+     * @param event
+     * @param request - null if not known
+     */
+    private void emitPermissionEvent(PermissionEvent event, InFlightPermissionRequest request) {
+        if (metricsListener == null) {
+            return;
+        }
+        if (request == null) {
+            emitPermissionEvent(event, null, System.nanoTime());
+            return;
+        }
+        final String[] permissions;
+        synchronized (requestLock) {
+            permissions = request.getPermissions();
+        }
+        emitPermissionEvent(event, permissions, request.startNanos);
+    }
+
+    /**
+     * Reporting a stage of the flow
+     *
+     * @param event
+     * @param permissions
+     * @param startNanos
+     */
+    private void emitPermissionEvent(PermissionEvent event, String[] permissions, long startNanos) {
+        final PermissionMetricsListener listener = metricsListener;
+        if (listener == null) {
+            return;
+        }
+        listener.onPermissionEvent(event, permissions, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Sending permission update
+     *
+     * @param grantCallback
+     * @param permissionGranted
+     */
+    private void executeCallback(final GrantCallback grantCallback, final boolean permissionGranted) {
+        if (grantCallback == null) {
+            return;
+        }
+        if (scheduler.isMainThread()) {
+            // Already on UI - no allocation
+            deliverCallback(grantCallback, permissionGranted);
+            return;
+        }
+
+        // Run on UI - the wait in the main queue is traced as an async section
+        final PermissionTracer tracer = permissionTracer;
+        final Runnable postedCallback = new Runnable() {
+            @Override
+            public void run() {
+                tracer.endAsyncSection(POSTED_CALLBACK_TRACE_SECTION, System.identityHashCode(this));
+                deliverCallback(grantCallback, permissionGranted);
+            }
+        };
+        tracer.beginAsyncSection(POSTED_CALLBACK_TRACE_SECTION, System.identityHashCode(postedCallback));
+        scheduler.post(postedCallback);
+    }
+
+    private void deliverCallback(GrantCallback grantCallback, boolean permissionGranted) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection(CALLBACK_TRACE_SECTION);
+        try {
+            if (permissionGranted) {
+                grantCallback.permissionGranted();
+            } else {
+                grantCallback.permissionDenied();
+            }
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Sending permission result
+     *
+     * @param resultCallback
+     * @param permissionResult
+     */
+    private void executeCallback(final ResultCallback resultCallback, final PermissionResult permissionResult) {
+        if (resultCallback == null) {
+            return;
+        }
+        if (scheduler.isMainThread()) {
+            deliverCallback(resultCallback, permissionResult);
+            return;
+        }
+
+        // Run on UI
+        final PermissionTracer tracer = permissionTracer;
+        final Runnable postedCallback = new Runnable() {
+            @Override
+            public void run() {
+                tracer.endAsyncSection(POSTED_CALLBACK_TRACE_SECTION, System.identityHashCode(this));
+                deliverCallback(resultCallback, permissionResult);
+            }
+        };
+        tracer.beginAsyncSection(POSTED_CALLBACK_TRACE_SECTION, System.identityHashCode(postedCallback));
+        scheduler.post(postedCallback);
+    }
+
+    private void deliverCallback(ResultCallback resultCallback, PermissionResult permissionResult) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection(CALLBACK_TRACE_SECTION);
+        try {
+            resultCallback.onPermissionResult(permissionResult);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking if the permission(permissions) are already approved
+     *
+     *  Grant states are served from an in-memory cache, the platform is asked only on the first check
+     *  of a permission and after the application came back to foreground
+     *
+     * @param context
+     * @param requestedPermissions
+     * @return
+     */
+    public boolean isPermissionAlreadyApproved(Object context, String... requestedPermissions) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.isPermissionAlreadyApproved");
+        try {
+            if (!platform.hasRuntimePermissions()) {
+                return true;
+            }
+
+            if (context == null) {
+                return false;
+            }
+            if (requestedPermissions == null) {
+                return false;
+            }
+
+            boolean permissionGranted = false;
+            for (String permission : requestedPermissions) {
+                if (InFlightPermissionRequest.isEmpty(permission)) {
+                    continue;
+                }
+
+                permissionGranted = isPermissionGranted(context, permission);
+
+                if (!permissionGranted) {
+                    return false;
+                }
+            }
+            return permissionGranted;
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Checking if the permissions given as PermissionTable bits are already approved
+     *
+     *  Answered from the cached bits when all of them are granted, otherwise each permission is checked
+     *
+     * @param context
+     * @param permissionMask - PermissionTable.READ_SMS | PermissionTable.READ_CONTACTS, etc
+     * @return false if the mask is empty or has bits not in PermissionTable
+     */
+    public boolean isPermissionAlreadyApproved(Object context, long permissionMask) {
+        final PermissionTracer tracer = permissionTracer;
+        tracer.beginSection("PermissionFlow.isPermissionAlreadyApproved");
+        try {
+            if (!platform.hasRuntimePermissions()) {
+                return true;
+            }
+
+            if (context == null) {
+                return false;
+            }
+            if (permissionMask == 0 || (permissionMask & ~PermissionIndex.get().getAllMask()) != 0) {
+                return false;
+            }
+
+            if (permissionStateCache.areAllGranted(permissionMask)) {
+                return true;
+            }
+            PermissionIndex permissionIndex = PermissionIndex.get();
+            for (long bits = permissionMask; bits != 0; bits &= bits - 1) {
+                if (!isPermissionGranted(context, permissionIndex.getPermission(Long.numberOfTrailingZeros(bits)))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Getting the current grant state of each permission, without any request
+     *
+     * @param context
+     * @param requestedPermissions
+     * @return
+     */
+    private PermissionResult getPermissionResult(Object context, String[] requestedPermissions) {
+        if (!platform.hasRuntimePermissions()) {
+            return PermissionResult.granted(requestedPermissions);
+        }
+        if (context == null || requestedPermissions.length > PermissionResult.MAX_PERMISSIONS) {
+            return PermissionResult.denied(requestedPermissions);
+        }
+
+        long grantedMask = 0;
+        for (int i = 0; i < requestedPermissions.length; i++) {
+            if (InFlightPermissionRequest.isEmpty(requestedPermissions[i])) {
+                continue;
+            }
+            if (isPermissionGranted(context, requestedPermissions[i])) {
+                grantedMask |= 1L << i;
+            }
+        }
+        return new PermissionResult(requestedPermissions, grantedMask, 0);
+    }
+
+    /**
+     * Checking the grant state of a single permission, going to the platform only on cache miss
+     *
+     * @param context
+     * @param permission
+     * @return
+     */
+    private boolean isPermissionGranted(Object context, String permission) {
+        Boolean cachedGranted = permissionStateCache.get(permission);
+        if (cachedGranted != null) {
+            return cachedGranted;
+        }
+        return readPermissionState(context, permission);
+    }
+
+    /**
+     * Reading the grant state from the platform and updating the cache, store and state listeners
+     *
+     * @param context
+     * @param permission
+     * @return
+     */
+    private boolean readPermissionState(Object context, String permission) {
+        boolean permissionGranted = platform.isPermissionGranted(context, permission);
+
+        permissionStateCache.put(permission, permissionGranted);
+        permissionOutcomeStore.recordState(permission, permissionGranted);
+        permissionStateObservers.onStateRead(permission, permissionGranted);
+        return permissionGranted;
+    }
+
+    /**
+     * Updating the cached and stored state from a system request response
+     *
+     * @param permission
+     * @param granted
+     * @param permanentlyDenied
+     */
+    private void updatePermissionState(String permission, boolean granted, boolean permanentlyDenied) {
+        permissionStateCache.put(permission, granted);
+        permissionStateObservers.onStateRead(permission, granted);
+        if (granted) {
+            permissionOutcomeStore.record(permission, PermissionOutcomeStore.OUTCOME_GRANTED);
+        } else if (permanentlyDenied) {
+            permissionOutcomeStore.record(permission, PermissionOutcomeStore.OUTCOME_PERMANENTLY_DENIED);
+        } else {
+            permissionOutcomeStore.record(permission, PermissionOutcomeStore.OUTCOME_DENIED);
+        }
+    }
+
+    /**
+     * Listening for the grant state changes of the permissions, instead of polling isPermissionAlreadyApproved
+     *
+     *  The listener is called on the main thread only on a real change: granted/denied by a request,
+     *  or changed from Settings (checked once for all the listeners, shortly after a host is resumed)
+     *
+     * @param context - application context, kept for the later checks
+     * @param permissionStateListener
+     * @param permissions - Manifest.permission.READ_CONTACTS, etc - none for all the dangerous permissions of PermissionTable
+     */
+    public void addPermissionStateListener(Object context, PermissionStateListener permissionStateListener, String... permissions) {
+        if (context == null || permissionStateListener == null) {
+            return;
+        }
+        if (permissions == null || permissions.length == 0) {
+            PermissionIndex permissionIndex = PermissionIndex.get();
+            permissions = permissionIndex.getPermissions(permissionIndex.getDangerousMask());
+        }
+
+        permissionStateObservers.add(context, permissionStateListener, permissions);
+        for (String permission : permissions) {
+            permissionStateObservers.setInitialState(permission, isPermissionGranted(context, permission));
+        }
+    }
+
+    /**
+     * Removing the state listener
+     *
+     * @param permissionStateListener
+     */
+    public void removePermissionStateListener(PermissionStateListener permissionStateListener) {
+        permissionStateObservers.remove(permissionStateListener);
+        if (permissionStateObservers.isEmpty()) {
+            scheduler.remove(revalidatePermissionStates);
+        }
+    }
+
+    /**
+     * Checking again (debounced) the observed permissions
+     */
+    private void schedulePermissionStateRevalidation() {
+        if (permissionStateObservers.isEmpty()) {
+            return;
+        }
+        scheduler.remove(revalidatePermissionStates);
+        scheduler.postDelayed(revalidatePermissionStates, PERMISSION_STATE_REVALIDATION_DELAY_MS);
+    }
+
+    private final Runnable revalidatePermissionStates = new Runnable() {
+        @Override
+        public void run() {
+            Object context = permissionStateObservers.getContext();
+            if (context == null) {
+                return;
+            }
+            for (String permission : permissionStateObservers.getObservedPermissions()) {
+                readPermissionState(context, permission);
+            }
+        }
+    };
+
+    /**
+     * Reading (once) in background the grant state of all the PermissionTable permissions in one batch,
+     * the first checks are then answered from the cache without asking the platform on the main thread
+     *
+     *  Shows as "PermissionFlow.preloadPermissionSnapshot" trace section
+     *
+     * @param context - application context
+     */
+    public void preloadPermissionSnapshot(final Object context) {
+        if (context == null || !permissionSnapshotStarted.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final PermissionTracer tracer = permissionTracer;
+                tracer.beginSection("PermissionFlow.preloadPermissionSnapshot");
+                try {
+                    long startNanos = System.nanoTime();
+                    PermissionIndex permissionIndex = PermissionIndex.get();
+                    String[] permissions = permissionIndex.getPermissions(permissionIndex.getAllMask());
+                    boolean runtimePermissions = platform.hasRuntimePermissions();
+                    Set<String> grantedPermissions = platform.getGrantedPermissions(context, permissions);
+
+                    long grantedMask = 0;
+                    for (int i = 0; i < permissions.length; i++) {
+                        boolean granted = !runtimePermissions || grantedPermissions.contains(permissions[i]);
+                        if (granted) {
+                            grantedMask |= 1L << i;
+                        }
+                        permissionStateCache.putIfAbsent(permissions[i], granted);
+                    }
+                    permissionSnapshot = new PermissionSnapshot(grantedMask, System.nanoTime() - startNanos);
+                } finally {
+                    tracer.endSection();
+                }
+            }
+        }, "PermissionSnapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Getting the startup snapshot, without blocking
+     *
+     * @return null until the background read is done (or never started)
+     */
+    public PermissionSnapshot getPermissionSnapshot() {
+        return permissionSnapshot;
+    }
+
+    /**
+     * Number of requests started or queued and not resolved yet, with their callers -
+     * 0 once every flow is finished, anything else is a leaked request (tests)
+     *
+     * @return
+     */
+    int getInFlightRequestCount() {
+        synchronized (requestLock) {
+            int count = pendingRequests.size();
+            if (activeRequest != null) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Outcomes of the requests - the platform can restore and keep them between application starts
+     *
+     * @return
+     */
+    public PermissionOutcomeStore getPermissionOutcomeStore() {
+        return permissionOutcomeStore;
+    }
+
+    /**
+     * Number of permission checks answered from the cache
+     *
+     * @return
+     */
+    public long getPermissionCacheHitCount() {
+        return permissionStateCache.getHitCount();
+    }
+
+    /**
+     * Number of permission checks that had to ask the platform
+     *
+     * @return
+     */
+    public long getPermissionCacheMissCount() {
+        return permissionStateCache.getMissCount();
+    }
+
+    /**
+     * Resetting the cache hit/miss counters
+     */
+    public void resetPermissionCacheStatistics() {
+        permissionStateCache.resetStatistics();
+    }
+
+    /**
+     * Dropping the cached grant states, next checks will ask the platform again
+     */
+    public void invalidatePermissionCache() {
+        permissionStateCache.invalidate();
+    }
+
+    /**
+     * Permission callback listener
+     */
+    public interface GrantCallback {
+        void permissionGranted();
+        void permissionDenied();
+    }
+
+    /**
+     * Permission callback listener with the state of each permission
+     */
+    public interface ResultCallback {
+        void onPermissionResult(PermissionResult result);
+    }
+
+    /**
+     * Granted only when all the permissions are granted
+     */
+    private static class GrantCallbackAdapter implements ResultCallback {
+
+        private final GrantCallback grantCallback;
+
+        GrantCallbackAdapter(GrantCallback grantCallback) {
+            this.grantCallback = grantCallback;
+        }
+
+        @Override
+        public void onPermissionResult(PermissionResult result) {
+            if (result.areAllPermissionsGranted()) {
+                grantCallback.permissionGranted();
+            } else {
+                grantCallback.permissionDenied();
+            }
+        }
+    }
+}
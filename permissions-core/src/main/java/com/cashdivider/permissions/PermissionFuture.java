@@ -0,0 +1,130 @@
+package com.cashdivider.permissions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future of a permission check, usable from any thread
+ *
+ *  The system permission request can not be cancelled, so cancel() has no effect.
+ *  Listeners are executed on the given executor once the result is available.
+ */
+public final class PermissionFuture implements Future<PermissionResult> {
+
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile PermissionResult result = null;
+
+    private List<ListenerEntry> listeners = new ArrayList<>(); // Guarded by this, null once completed
+
+    PermissionFuture() {
+    }
+
+    /**
+     * Future already holding the result
+     *
+     * @param result
+     * @return
+     */
+    static PermissionFuture completed(PermissionResult result) {
+        PermissionFuture future = new PermissionFuture();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Setting the result, only the first result is kept
+     *
+     * @param permissionResult
+     */
+    void complete(PermissionResult permissionResult) {
+        List<ListenerEntry> listenersToRun;
+        synchronized (this) {
+            if (listeners == null) {
+                return;
+            }
+            result = permissionResult;
+            listenersToRun = listeners;
+            listeners = null;
+        }
+        completed.countDown();
+
+        for (ListenerEntry listenerEntry : listenersToRun) {
+            listenerEntry.execute();
+        }
+    }
+
+    /**
+     * Running the listener on the executor when the result is available
+     *
+     * @param listener
+     * @param executor
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        ListenerEntry listenerEntry = new ListenerEntry(listener, executor);
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listenerEntry);
+                return;
+            }
+        }
+        listenerEntry.execute();
+    }
+
+    /**
+     * Getting the result without blocking
+     *
+     * @return null if the result is not available yet
+     */
+    public PermissionResult getNow() {
+        return result;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+    @Override
+    public PermissionResult get() throws InterruptedException {
+        completed.await();
+        return result;
+    }
+
+    @Override
+    public PermissionResult get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!completed.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result;
+    }
+
+    private static class ListenerEntry {
+
+        private final Runnable listener;
+        private final Executor executor;
+
+        ListenerEntry(Runnable listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void execute() {
+            executor.execute(listener);
+        }
+    }
+}
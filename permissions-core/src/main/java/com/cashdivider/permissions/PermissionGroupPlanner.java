@@ -0,0 +1,112 @@
+package com.cashdivider.permissions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordering (and optionally expanding) the permissions of a system request by permission group
+ *
+ *  Android grants a whole group at once - a permission is granted without any dialog when another
+ *  permission of its group is already granted. Groups are driven by the PermissionIndex.
+ *  Stateless, thread safe
+ */
+class PermissionGroupPlanner {
+
+    private PermissionGroupPlanner() {
+    }
+
+    /**
+     * Getting all the declared permissions of the groups of the mask
+     *
+     * @param permissionMask - PermissionTable bits
+     * @return PermissionTable bits, the mask itself included
+     */
+    static long getGroupsMask(long permissionMask) {
+        PermissionIndex permissionIndex = PermissionIndex.get();
+        long groupsMask = permissionMask;
+        for (int group = 0; group < permissionIndex.getGroupCount(); group++) {
+            long groupMask = permissionIndex.getGroupMask(group);
+            if ((groupMask & permissionMask) != 0) {
+                groupsMask |= groupMask;
+            }
+        }
+        return groupsMask;
+    }
+
+    /**
+     * Planning the permissions of a system request
+     *
+     *  Permissions of the same group are kept together - one dialog per group.
+     *  Groups already granted come first (granted without dialog), then the groups with more permissions.
+     *  Not dangerous and not declared permissions come last, in the given order
+     *
+     * @param permissions
+     * @param grantedMask - PermissionTable bits already granted
+     * @param expandGroups - true to also ask for the other declared permissions of the groups (granted with the same dialog)
+     * @return
+     */
+    static String[] plan(String[] permissions, long grantedMask, boolean expandGroups) {
+        PermissionIndex permissionIndex = PermissionIndex.get();
+        long requestedMask = 0;
+        List<String> otherPermissions = new ArrayList<>();
+        for (String permission : permissions) {
+            int index = permissionIndex.indexOf(permission);
+            if (index >= 0 && permissionIndex.isDangerous(index)) {
+                requestedMask |= 1L << index;
+            } else if (!otherPermissions.contains(permission)) {
+                otherPermissions.add(permission);
+            }
+        }
+        if (requestedMask == 0) {
+            return permissions;
+        }
+        if (expandGroups) {
+            requestedMask = getGroupsMask(requestedMask);
+        }
+
+        List<String> plannedPermissions = new ArrayList<>(Long.bitCount(requestedMask) + otherPermissions.size());
+        long remainingGroups = 0;
+        for (int group = 0; group < permissionIndex.getGroupCount(); group++) {
+            if ((permissionIndex.getGroupMask(group) & requestedMask) != 0) {
+                remainingGroups |= 1L << group;
+            }
+        }
+        while (remainingGroups != 0) {
+            int bestGroup = -1;
+            for (long bits = remainingGroups; bits != 0; bits &= bits - 1) {
+                int group = Long.numberOfTrailingZeros(bits);
+                if (bestGroup < 0 || compareGroups(permissionIndex, group, bestGroup, requestedMask, grantedMask) < 0) {
+                    bestGroup = group;
+                }
+            }
+            remainingGroups &= ~(1L << bestGroup);
+
+            for (long bits = permissionIndex.getGroupMask(bestGroup) & requestedMask; bits != 0; bits &= bits - 1) {
+                plannedPermissions.add(permissionIndex.getPermission(Long.numberOfTrailingZeros(bits)));
+            }
+        }
+        plannedPermissions.addAll(otherPermissions);
+        return plannedPermissions.toArray(new String[plannedPermissions.size()]);
+    }
+
+    /**
+     * Comparing two groups by prompt priority
+     *
+     * @return negative if the first group should be asked first
+     */
+    private static int compareGroups(PermissionIndex permissionIndex, int group, int otherGroup, long requestedMask, long grantedMask) {
+        long groupMask = permissionIndex.getGroupMask(group);
+        long otherGroupMask = permissionIndex.getGroupMask(otherGroup);
+        boolean granted = (groupMask & grantedMask) != 0;
+        boolean otherGranted = (otherGroupMask & grantedMask) != 0;
+        if (granted != otherGranted) {
+            return granted ? -1 : 1;
+        }
+        int count = Long.bitCount(groupMask & requestedMask);
+        int otherCount = Long.bitCount(otherGroupMask & requestedMask);
+        if (count != otherCount) {
+            return otherCount - count;
+        }
+        return group - otherGroup;
+    }
+}
@@ -0,0 +1,151 @@
+package com.cashdivider.permissions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index and bit of each permission declared in the application manifest, with its permission group
+ *
+ *  Registered by the PermissionTable class generated in the application (permissions.gradle) when it is loaded -
+ *  the first use loads it by name. Without a generated table no permission is indexed (masks are not supported,
+ *  the permission strings still work). Immutable once registered, thread safe
+ */
+public final class PermissionIndex {
+
+    static final String TABLE_CLASS_NAME = "com.cashdivider.permissions.PermissionTable";
+
+    private static volatile PermissionIndex instance = null;
+
+    private final String[] permissions;
+    private final int[] permissionGroups; // Index of the group of each permission, -1 if not dangerous
+    private final long[] groupMasks; // Bits of the permissions of each group
+    private final long allMask;
+    private final long dangerousMask;
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    private PermissionIndex(String[] permissions, String[] groups, int[] permissionGroups) {
+        this.permissions = permissions.clone();
+        this.permissionGroups = permissionGroups.clone();
+        this.groupMasks = new long[groups.length];
+        this.allMask = permissions.length == Long.SIZE ? -1L : (1L << permissions.length) - 1;
+
+        long dangerous = 0;
+        for (int i = 0; i < permissions.length; i++) {
+            indexes.put(permissions[i], i);
+            if (permissionGroups[i] >= 0) {
+                groupMasks[permissionGroups[i]] |= 1L << i;
+                dangerous |= 1L << i;
+            }
+        }
+        this.dangerousMask = dangerous;
+    }
+
+    /**
+     * Registering the declared permissions - called by the generated PermissionTable
+     *
+     * @param permissions - max 64
+     * @param groups - permission groups of the dangerous permissions
+     * @param permissionGroups - index in groups of each permission, -1 if not dangerous
+     */
+    public static synchronized void register(String[] permissions, String[] groups, int[] permissionGroups) {
+        if (permissions.length > Long.SIZE || permissionGroups.length != permissions.length) {
+            throw new IllegalArgumentException(permissions.length + " permissions, " + permissionGroups.length + " groups indexes - max " + Long.SIZE + " permissions, one group index each");
+        }
+        instance = new PermissionIndex(permissions, groups, permissionGroups);
+    }
+
+    /**
+     * Getting the registered index, loading the generated PermissionTable on first use
+     *
+     * @return
+     */
+    static PermissionIndex get() {
+        PermissionIndex index = instance;
+        return index != null ? index : load();
+    }
+
+    private static synchronized PermissionIndex load() {
+        if (instance == null) {
+            try {
+                // Registers itself from its static initializer
+                Class.forName(TABLE_CLASS_NAME, true, PermissionIndex.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                // No generated table - no declared permission known
+            }
+            if (instance == null) {
+                instance = new PermissionIndex(new String[0], new String[0], new int[0]);
+            }
+        }
+        return instance;
+    }
+
+    int getCount() {
+        return permissions.length;
+    }
+
+    /**
+     * Getting the index of a declared permission
+     *
+     * @param permission
+     * @return -1 if not declared
+     */
+    int indexOf(String permission) {
+        if (permission == null) {
+            return -1;
+        }
+        Integer index = indexes.get(permission);
+        return index == null ? -1 : index;
+    }
+
+    String getPermission(int index) {
+        return permissions[index];
+    }
+
+    /**
+     * Getting the permissions of a mask, in index order
+     *
+     * @param permissionMask
+     * @return
+     */
+    String[] getPermissions(long permissionMask) {
+        permissionMask &= allMask;
+        String[] maskPermissions = new String[Long.bitCount(permissionMask)];
+        int i = 0;
+        for (long bits = permissionMask; bits != 0; bits &= bits - 1) {
+            maskPermissions[i++] = permissions[Long.numberOfTrailingZeros(bits)];
+        }
+        return maskPermissions;
+    }
+
+    /**
+     * Checking if the permission is dangerous (runtime permission with a group)
+     *
+     * @param index
+     * @return
+     */
+    boolean isDangerous(int index) {
+        return permissionGroups[index] >= 0;
+    }
+
+    long getAllMask() {
+        return allMask;
+    }
+
+    long getDangerousMask() {
+        return dangerousMask;
+    }
+
+    int getGroupCount() {
+        return groupMasks.length;
+    }
+
+    /**
+     * Getting the bits of all the declared permissions of a group
+     *
+     * @param group
+     * @return
+     */
+    long getGroupMask(int group) {
+        return groupMasks[group];
+    }
+}
@@ -0,0 +1,82 @@
+package com.cashdivider.permissions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory metrics sink - counts the events and keeps a histogram of their elapsed time
+ *
+ *  Bucket 0 holds the events under 1 ms, bucket i the events in [2^(i-1), 2^i) ms
+ */
+public class PermissionMetricsHistogram implements PermissionMetricsListener {
+
+    public static final int BUCKET_COUNT = 32;
+
+    private static final int EVENT_COUNT = PermissionEvent.values().length;
+
+    private final AtomicLongArray counts = new AtomicLongArray(EVENT_COUNT);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(EVENT_COUNT);
+    private final AtomicLongArray buckets = new AtomicLongArray(EVENT_COUNT * BUCKET_COUNT);
+
+    @Override
+    public void onPermissionEvent(PermissionEvent event, String[] permissions, long elapsedNanos) {
+        int index = event.ordinal();
+        counts.incrementAndGet(index);
+        totalNanos.addAndGet(index, elapsedNanos);
+        buckets.incrementAndGet(index * BUCKET_COUNT + bucketOf(elapsedNanos));
+    }
+
+    public long getCount(PermissionEvent event) {
+        return counts.get(event.ordinal());
+    }
+
+    public long getTotalNanos(PermissionEvent event) {
+        return totalNanos.get(event.ordinal());
+    }
+
+    public long getBucketCount(PermissionEvent event, int bucket) {
+        return buckets.get(event.ordinal() * BUCKET_COUNT + bucket);
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile of the events
+     *
+     * @param event
+     * @param percentile - 0..100
+     * @return milliseconds, 0 if there is no event
+     */
+    public long getPercentileMillis(PermissionEvent event, double percentile) {
+        long count = getCount(event);
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(count * percentile / 100d);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += getBucketCount(event, bucket);
+            if (seen >= threshold) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+            totalNanos.set(i, 0);
+        }
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    private static int bucketOf(long elapsedNanos) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMillis <= 0) {
+            return 0;
+        }
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(elapsedMillis);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+}
@@ -0,0 +1,16 @@
+package com.cashdivider.permissions;
+
+/**
+ * Listener for the permission flow stages
+ *
+ *  Called on the thread running the flow (mostly main thread), must return fast
+ */
+public interface PermissionMetricsListener {
+
+    /**
+     * @param event - Stage of the flow
+     * @param permissions - Permissions of the request, null if not known (settings launched from dialog)
+     * @param elapsedNanos - Time since the request was started
+     */
+    void onPermissionEvent(PermissionEvent event, String[] permissions, long elapsedNanos);
+}
@@ -0,0 +1,115 @@
+package com.cashdivider.permissions;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last outcome of each permission request
+ *
+ *  Kept in memory, the platform can keep them between application starts: restore() the stored outcomes
+ *  and write the new ones from an OutcomeWriter. Reads before the restore return OUTCOME_UNKNOWN. Thread safe
+ */
+public class PermissionOutcomeStore {
+
+    public static final int OUTCOME_UNKNOWN = 0;
+    public static final int OUTCOME_GRANTED = 1;
+    public static final int OUTCOME_DENIED = 2;
+    public static final int OUTCOME_PERMANENTLY_DENIED = 3;
+
+    private final ConcurrentHashMap<String, Outcome> outcomes = new ConcurrentHashMap<>();
+    private volatile OutcomeWriter outcomeWriter = null;
+
+    /**
+     * Setting the writer of the recorded outcomes, null for memory only
+     *
+     * @param outcomeWriter
+     */
+    public void setOutcomeWriter(OutcomeWriter outcomeWriter) {
+        this.outcomeWriter = outcomeWriter;
+    }
+
+    /**
+     * Restoring a stored outcome - outcomes recorded meanwhile are newer and kept
+     *
+     * @param permission
+     * @param outcome
+     * @param timestamp
+     */
+    public void restore(String permission, int outcome, long timestamp) {
+        outcomes.putIfAbsent(permission, new Outcome(outcome, timestamp));
+    }
+
+    /**
+     * Getting the last outcome
+     *
+     * @param permission
+     * @return OUTCOME_UNKNOWN if never recorded or not restored yet
+     */
+    public int getOutcome(String permission) {
+        Outcome outcome = outcomes.get(permission);
+        return outcome == null ? OUTCOME_UNKNOWN : outcome.outcome;
+    }
+
+    /**
+     * Getting the time of the last outcome
+     *
+     * @param permission
+     * @return System.currentTimeMillis() of the record, 0 if unknown
+     */
+    public long getTimestamp(String permission) {
+        Outcome outcome = outcomes.get(permission);
+        return outcome == null ? 0 : outcome.timestamp;
+    }
+
+    /**
+     * Recording the outcome of a request
+     *
+     * @param permission
+     * @param outcome
+     */
+    void record(String permission, int outcome) {
+        Outcome current = outcomes.get(permission);
+        if (current != null && current.outcome == outcome) {
+            return;
+        }
+
+        Outcome recorded = new Outcome(outcome, System.currentTimeMillis());
+        outcomes.put(permission, recorded);
+        final OutcomeWriter writer = outcomeWriter;
+        if (writer != null) {
+            writer.write(permission, recorded.outcome, recorded.timestamp);
+        }
+    }
+
+    /**
+     * Recording a state read from the system - a denied state does not override a permanent denial
+     *
+     * @param permission
+     * @param granted
+     */
+    void recordState(String permission, boolean granted) {
+        if (granted) {
+            record(permission, OUTCOME_GRANTED);
+        } else if (getOutcome(permission) == OUTCOME_GRANTED) {
+            // Revoked from Settings
+            record(permission, OUTCOME_DENIED);
+        }
+    }
+
+    /**
+     * Keeping the recorded outcomes - called on the recording thread, must not block
+     */
+    public interface OutcomeWriter {
+        void write(String permission, int outcome, long timestamp);
+    }
+
+    private static class Outcome {
+
+        final int outcome;
+        final long timestamp;
+
+        Outcome(int outcome, long timestamp) {
+            this.outcome = outcome;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.cashdivider.permissions;
+
+import java.util.Set;
+
+/**
+ * Everything PermissionFlow needs from the system and the UI - permission states, system requests,
+ * dialogs and snack-bars
+ *
+ *  Hosts (activities), contexts and root views are opaque to the flow, only the platform uses them.
+ *  All the methods are called on the main thread, except isPermissionGranted and getGrantedPermissions (any thread)
+ */
+public interface PermissionPlatform {
+
+    /**
+     * Checking if the permissions are granted at runtime - all of them are granted otherwise
+     *
+     * @return
+     */
+    boolean hasRuntimePermissions();
+
+    /**
+     * Checking the current grant state, without any request
+     *
+     * @param context
+     * @param permission
+     * @return
+     */
+    boolean isPermissionGranted(Object context, String permission);
+
+    /**
+     * Checking the current grant state of several permissions at once, without any request (any thread)
+     *
+     * @param context
+     * @param permissions
+     * @return the granted ones
+     */
+    Set<String> getGrantedPermissions(Object context, String[] permissions);
+
+    /**
+     * Identity of a host surviving its recreation
+     *
+     * @param host
+     * @return
+     */
+    String getHostKey(Object host);
+
+    /**
+     * Root view of a recreated host, for the snack-bars
+     *
+     * @param host
+     * @return
+     */
+    Object getRootView(Object host);
+
+    /**
+     * Checking if the permission was denied before without "Do not show again"
+     *
+     * @param host
+     * @param permission
+     * @return
+     */
+    boolean shouldShowRequestPermissionRationale(Object host, String permission);
+
+    /**
+     * Requesting a single permission from the system
+     *
+     * @param host
+     * @param permission
+     * @param requestListener
+     */
+    void requestPermission(Object host, String permission, RequestListener requestListener);
+
+    /**
+     * Requesting multiple permissions from the system in one request
+     *
+     * @param host
+     * @param permissions
+     * @param requestListener
+     */
+    void requestPermissions(Object host, String[] permissions, RequestListener requestListener);
+
+    /**
+     * Showing the rationale dialog - positive button continues the request, anything else cancels
+     * (user cancelled only from the negative button)
+     *
+     * @param host
+     * @param message
+     * @param dialogCallback
+     */
+    void showRationaleDialog(Object host, String message, DialogCallback dialogCallback);
+
+    /**
+     * Showing the dialog of permanently denied permissions - positive button opens the settings
+     *
+     * @param host
+     * @param message
+     * @param dialogCallback
+     */
+    void showSettingsDialog(Object host, String message, DialogCallback dialogCallback);
+
+    /**
+     * Releasing the dialog of a destroyed host
+     *
+     * @param host
+     * @param cancelPending - false to drop a pending dialog without cancelling (host recreated)
+     */
+    void releaseDialog(Object host, boolean cancelPending);
+
+    /**
+     * Showing the snack-bar with the button opening the settings - the button calls PermissionFlow.onSettingsAction
+     *
+     * @param rootView
+     * @param message
+     * @param request - passed back to onSettingsAction, null if the metrics are not enabled
+     */
+    void showSettingsSnackbar(Object rootView, String message, Object request);
+
+    /**
+     * Opening the application settings, where the user can grant the permanently denied permissions
+     *
+     * @param context
+     */
+    void openSettings(Object context);
+
+    interface RequestListener {
+
+        /**
+         * @param grantedPermissions
+         * @param deniedPermissions - Permanently denied included
+         * @param permanentlyDeniedPermissions
+         */
+        void onPermissionsChecked(Set<String> grantedPermissions, Set<String> deniedPermissions, Set<String> permanentlyDeniedPermissions);
+
+        /**
+         * The system can show a rationale before the request - the token continues or cancels it
+         *
+         * @param rationaleToken
+         */
+        void onPermissionRationaleShouldBeShown(RationaleToken rationaleToken);
+
+        /**
+         * @param requestOngoing - true if the system is still busy with a previous request (can be retried)
+         */
+        void onError(boolean requestOngoing);
+    }
+
+    interface RationaleToken {
+        void continuePermissionRequest();
+        void cancelPermissionRequest();
+    }
+
+    interface DialogCallback {
+        void onContinue();
+
+        /**
+         * @param userCancelled - true for the negative button, false when dismissed otherwise (back, host destroyed,
+         *                      replaced by another dialog)
+         */
+        void onCancel(boolean userCancelled);
+    }
+}
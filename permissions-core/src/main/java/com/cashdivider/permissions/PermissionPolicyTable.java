@@ -0,0 +1,84 @@
+package com.cashdivider.permissions;
+
+/**
+ * Denial counts and times of the declared permissions, indexed by PermissionIndex
+ *
+ *  Policy decisions are array lookups, permissions not declared are never limited. Sized for any table,
+ *  the index is looked up on each use as it may be registered after the flow is created. Kept in memory for the process lifetime. Not thread safe - guarded by the PermissionFlow request lock
+ */
+class PermissionPolicyTable {
+
+    private final int[] denialCounts = new int[Long.SIZE]; // Consecutive denials
+    private final long[] lastDenialMillis = new long[Long.SIZE]; // Monotonic clock
+    private int sessionPromptCount = 0;
+
+    /**
+     * Recording a denial of the permission (system dialog or rationale cancelled)
+     *
+     * @param permission
+     * @param nowMillis - monotonic clock
+     */
+    void recordDenied(String permission, long nowMillis) {
+        int index = PermissionIndex.get().indexOf(permission);
+        if (index < 0) {
+            return;
+        }
+        if (denialCounts[index] < Integer.MAX_VALUE) {
+            denialCounts[index]++;
+        }
+        lastDenialMillis[index] = nowMillis;
+    }
+
+    /**
+     * Recording a grant - the denials are forgotten
+     *
+     * @param permission
+     */
+    void recordGranted(String permission) {
+        int index = PermissionIndex.get().indexOf(permission);
+        if (index >= 0) {
+            denialCounts[index] = 0;
+        }
+    }
+
+    /**
+     * Recording a system request
+     */
+    void recordPrompt() {
+        if (sessionPromptCount < Integer.MAX_VALUE) {
+            sessionPromptCount++;
+        }
+    }
+
+    /**
+     * Application back to foreground - new prompt budget
+     */
+    void resetSession() {
+        sessionPromptCount = 0;
+    }
+
+    /**
+     * Checking if a new request for the permissions is allowed by the policy
+     *
+     * @param policy
+     * @param permissions
+     * @param grantedMask - PermissionTable bits already granted, not limited
+     * @param nowMillis - monotonic clock
+     * @return false if the budget is spent or any permission is in its cooldown
+     */
+    boolean isAllowed(PermissionRequestPolicy policy, String[] permissions, long grantedMask, long nowMillis) {
+        if (sessionPromptCount >= policy.getSessionPromptBudget()) {
+            return false;
+        }
+        for (String permission : permissions) {
+            int index = PermissionIndex.get().indexOf(permission);
+            if (index < 0 || denialCounts[index] == 0 || (grantedMask & (1L << index)) != 0) {
+                continue;
+            }
+            if (nowMillis - lastDenialMillis[index] < policy.getCooldownMs(denialCounts[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
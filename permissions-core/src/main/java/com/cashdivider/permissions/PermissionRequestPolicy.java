@@ -0,0 +1,53 @@
+package com.cashdivider.permissions;
+
+/**
+ * Limits of the new requests for permissions the user has denied
+ *
+ *  After a denial the permission is not asked again during a cooldown, doubled on each consecutive denial
+ *  up to maxCooldownMs. At most sessionPromptBudget system requests are sent while the application is in foreground.
+ *  A request not allowed is answered right away with the cached states - no dialog, snack-bar or system request.
+ *  Immutable
+ *
+ *  PermissionUtils.setPermissionRequestPolicy(new PermissionRequestPolicy(30000, 10 * 60000, 3));
+ */
+public final class PermissionRequestPolicy {
+
+    public static final int NO_BUDGET = Integer.MAX_VALUE;
+
+    private final long cooldownMs;
+    private final long maxCooldownMs;
+    private final int sessionPromptBudget;
+
+    /**
+     * @param cooldownMs - cooldown after the first denial, 0 for none
+     * @param maxCooldownMs - cooldown cap after consecutive denials
+     * @param sessionPromptBudget - system requests per foreground session, NO_BUDGET for no limit
+     */
+    public PermissionRequestPolicy(long cooldownMs, long maxCooldownMs, int sessionPromptBudget) {
+        if (cooldownMs < 0 || maxCooldownMs < cooldownMs || sessionPromptBudget < 0) {
+            throw new IllegalArgumentException("Invalid policy: cooldownMs " + cooldownMs + ", maxCooldownMs " + maxCooldownMs + ", sessionPromptBudget " + sessionPromptBudget);
+        }
+        this.cooldownMs = cooldownMs;
+        this.maxCooldownMs = maxCooldownMs;
+        this.sessionPromptBudget = sessionPromptBudget;
+    }
+
+    /**
+     * Getting the cooldown after the given number of consecutive denials
+     *
+     * @param denialCount
+     * @return milliseconds, 0 if never denied
+     */
+    public long getCooldownMs(int denialCount) {
+        if (denialCount <= 0 || cooldownMs == 0) {
+            return 0;
+        }
+        // Doubling without overflowing
+        int shift = Math.min(denialCount - 1, Long.numberOfLeadingZeros(cooldownMs) - 1);
+        return Math.min(cooldownMs << shift, maxCooldownMs);
+    }
+
+    public int getSessionPromptBudget() {
+        return sessionPromptBudget;
+    }
+}
@@ -0,0 +1,52 @@
+package com.cashdivider.permissions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State machine of a permission request
+ *
+ *  IDLE -> RATIONALE -> PROMPTING -> RESOLVED, every transition is a compare-and-set so a stage
+ *  runs once whatever thread or callback tries it (back to IDLE only when the host is recreated)
+ */
+class PermissionRequestState {
+
+    static final int STATE_IDLE = 0; // Created, batching or waiting for its host
+    static final int STATE_RATIONALE = 1; // Rationale dialog shown
+    static final int STATE_PROMPTING = 2; // System request sent - the permissions can not be extended anymore
+    static final int STATE_RESOLVED = 3; // Result delivered to the callers
+
+    private final AtomicInteger state = new AtomicInteger(STATE_IDLE);
+
+    /**
+     * Moving to the next state
+     *
+     * @param expectedState
+     * @param newState
+     * @return false if the request is not in the expected state (stage already run by another caller)
+     */
+    boolean moveState(int expectedState, int newState) {
+        return state.compareAndSet(expectedState, newState);
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    /**
+     * Moving to RESOLVED from any state
+     *
+     * @return false if already resolved - the result must not be delivered again
+     */
+    boolean markResolved() {
+        return state.getAndSet(STATE_RESOLVED) != STATE_RESOLVED;
+    }
+
+    /**
+     * System request sent (or resolved) - the permissions can not be extended anymore
+     *
+     * @return
+     */
+    boolean isDispatched() {
+        return state.get() >= STATE_PROMPTING;
+    }
+}
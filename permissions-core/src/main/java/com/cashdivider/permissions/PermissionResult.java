@@ -0,0 +1,135 @@
+package com.cashdivider.permissions;
+
+/**
+ * Immutable result of a permission check
+ *
+ *  Holds the grant state of every requested permission as bits over the requested permissions order,
+ *  bit i is the state of getPermission(i). Empty permissions are ignored.
+ */
+public final class PermissionResult {
+
+    public static final int MAX_PERMISSIONS = Long.SIZE;
+
+    private final String[] permissions;
+    private final long requestedMask;
+    private final long grantedMask;
+    private final long permanentlyDeniedMask;
+
+    PermissionResult(String[] permissions, long grantedMask, long permanentlyDeniedMask) {
+        this.permissions = permissions.clone();
+
+        long mask = 0;
+        for (int i = 0; i < this.permissions.length && i < MAX_PERMISSIONS; i++) {
+            if (this.permissions[i] != null && this.permissions[i].length() > 0) {
+                mask |= 1L << i;
+            }
+        }
+        this.requestedMask = mask;
+        this.grantedMask = grantedMask & mask;
+        this.permanentlyDeniedMask = permanentlyDeniedMask & mask & ~grantedMask;
+    }
+
+    /**
+     * Result with all the permissions granted
+     *
+     * @param permissions
+     * @return
+     */
+    static PermissionResult granted(String[] permissions) {
+        return new PermissionResult(permissions, -1L, 0);
+    }
+
+    /**
+     * Result with all the permissions denied (not permanently)
+     *
+     * @param permissions
+     * @return
+     */
+    static PermissionResult denied(String[] permissions) {
+        return new PermissionResult(permissions, 0, 0);
+    }
+
+    /**
+     * Number of requested permissions
+     *
+     * @return
+     */
+    public int size() {
+        return permissions.length;
+    }
+
+    public String getPermission(int index) {
+        return permissions[index];
+    }
+
+    public boolean isGranted(int index) {
+        return index < MAX_PERMISSIONS && (grantedMask & (1L << index)) != 0;
+    }
+
+    public boolean isGranted(String permission) {
+        int index = indexOf(permission);
+        return index >= 0 && isGranted(index);
+    }
+
+    /**
+     * Denied with "Do not show again" - only the user can grant it from Settings
+     *
+     * @param index
+     * @return
+     */
+    public boolean isPermanentlyDenied(int index) {
+        return index < MAX_PERMISSIONS && (permanentlyDeniedMask & (1L << index)) != 0;
+    }
+
+    public boolean isPermanentlyDenied(String permission) {
+        int index = indexOf(permission);
+        return index >= 0 && isPermanentlyDenied(index);
+    }
+
+    /**
+     * Checking if all the requested permissions are granted
+     *
+     * @return false if no permission was requested
+     */
+    public boolean areAllPermissionsGranted() {
+        return requestedMask != 0 && grantedMask == requestedMask;
+    }
+
+    public boolean isAnyPermissionGranted() {
+        return grantedMask != 0;
+    }
+
+    public boolean isAnyPermissionPermanentlyDenied() {
+        return permanentlyDeniedMask != 0;
+    }
+
+    /**
+     * Granted permissions as bits over the requested permissions order
+     *
+     * @return
+     */
+    public long getGrantedMask() {
+        return grantedMask;
+    }
+
+    /**
+     * Permanently denied permissions as bits over the requested permissions order
+     *
+     * @return
+     */
+    public long getPermanentlyDeniedMask() {
+        return permanentlyDeniedMask;
+    }
+
+    private int indexOf(String permission) {
+        if (permission == null) {
+            return -1;
+        }
+        for (int i = 0; i < permissions.length; i++) {
+            if (permission.equals(permissions[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
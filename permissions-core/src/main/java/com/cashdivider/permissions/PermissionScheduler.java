@@ -0,0 +1,41 @@
+package com.cashdivider.permissions;
+
+/**
+ * Main thread of the platform - PermissionFlow runs its stages and callbacks through it
+ *
+ *  The Android library posts to the main Looper, JVM tests can run the tasks in place or step by step
+ */
+public interface PermissionScheduler {
+
+    /**
+     * Checking if the current thread is the main thread - callbacks are then called directly
+     *
+     * @return
+     */
+    boolean isMainThread();
+
+    void post(Runnable runnable);
+
+    void postDelayed(Runnable runnable, long delayMs);
+
+    /**
+     * Running before the next frame is drawn
+     *
+     * @param runnable
+     */
+    void postFrame(Runnable runnable);
+
+    /**
+     * Running once the main thread is idle
+     *
+     * @param runnable
+     */
+    void postIdle(Runnable runnable);
+
+    /**
+     * Removing the pending posts of the runnable
+     *
+     * @param runnable
+     */
+    void remove(Runnable runnable);
+}
@@ -0,0 +1,46 @@
+package com.cashdivider.permissions;
+
+/**
+ * Immutable grant state of all the PermissionTable permissions, read once at process start
+ *
+ *  Published by PermissionFlow.preloadPermissionSnapshot when the background read is done,
+ *  the same states are also loaded in the permission cache
+ */
+public final class PermissionSnapshot {
+
+    private final long grantedMask;
+    private final long readNanos;
+
+    PermissionSnapshot(long grantedMask, long readNanos) {
+        this.grantedMask = grantedMask;
+        this.readNanos = readNanos;
+    }
+
+    /**
+     * Checking if all the permissions of the mask were granted when the snapshot was taken
+     *
+     * @param permissionMask - PermissionTable.READ_SMS | PermissionTable.READ_CONTACTS, etc
+     * @return
+     */
+    public boolean areAllGranted(long permissionMask) {
+        return permissionMask != 0 && (grantedMask & permissionMask) == permissionMask;
+    }
+
+    /**
+     * Granted permissions as PermissionTable bits
+     *
+     * @return
+     */
+    public long getGrantedMask() {
+        return grantedMask;
+    }
+
+    /**
+     * Time taken by the background read
+     *
+     * @return
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+}
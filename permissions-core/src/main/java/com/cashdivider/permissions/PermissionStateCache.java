@@ -0,0 +1,132 @@
+package com.cashdivider.permissions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the permission grant states of a PermissionFlow
+ *
+ *  Filled on the first check of a permission, updated from the system request responses
+ *  and invalidated when the application comes back to foreground (the user can change it from Settings).
+ *  Granted permissions declared in the manifest are also kept as PermissionTable bits for mask checks.
+ *  Reads are lock free, writes are serialized so that a bit of the mask is never set without its state
+ */
+class PermissionStateCache {
+
+    private final ConcurrentHashMap<String, Boolean> grantStates = new ConcurrentHashMap<>();
+    private final AtomicLong grantedMask = new AtomicLong(); // PermissionTable bits, subset of grantStates
+    private final Object writeLock = new Object();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Getting the cached grant state
+     *
+     * @param permission
+     * @return null if the permission was not checked yet
+     */
+    Boolean get(String permission) {
+        Boolean granted = grantStates.get(permission);
+        if (granted == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return granted;
+    }
+
+    /**
+     * Checking if all the permissions of the mask are cached as granted, without any string lookup
+     *
+     *  Counts one hit per permission of the mask when they are all granted. Nothing is counted otherwise -
+     *  the caller then checks each permission with get(), which counts them
+     *
+     * @param permissionMask - PermissionTable bits
+     * @return false if any of them is denied or not checked yet
+     */
+    boolean areAllGranted(long permissionMask) {
+        if ((grantedMask.get() & permissionMask) != permissionMask) {
+            return false;
+        }
+        hitCount.addAndGet(Long.bitCount(permissionMask));
+        return true;
+    }
+
+    /**
+     * Getting the permissions cached as granted
+     *
+     * @return PermissionTable bits
+     */
+    long getGrantedMask() {
+        return grantedMask.get();
+    }
+
+    /**
+     * Updating the grant state
+     *
+     * @param permission
+     * @param granted
+     */
+    void put(String permission, boolean granted) {
+        synchronized (writeLock) {
+            grantStates.put(permission, granted);
+            updateGrantedMask(permission, granted);
+        }
+    }
+
+    /**
+     * Updating the bit of the permission, writeLock held
+     *
+     * @param permission
+     * @param granted
+     */
+    private void updateGrantedMask(String permission, boolean granted) {
+        int index = PermissionIndex.get().indexOf(permission);
+        if (index < 0) {
+            return;
+        }
+        long bit = 1L << index;
+        long current = grantedMask.get();
+        grantedMask.set(granted ? current | bit : current & ~bit);
+    }
+
+    /**
+     * Setting the grant state only if not cached yet - a state read in background must not
+     * override a newer one from a request
+     *
+     * @param permission
+     * @param granted
+     */
+    void putIfAbsent(String permission, boolean granted) {
+        synchronized (writeLock) {
+            if (grantStates.putIfAbsent(permission, granted) == null) {
+                updateGrantedMask(permission, granted);
+            }
+        }
+    }
+
+    /**
+     * Dropping all the cached states, next checks will go to the system again
+     */
+    void invalidate() {
+        synchronized (writeLock) {
+            // States first - the mask is never ahead of them
+            grantStates.clear();
+            grantedMask.set(0);
+        }
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+}
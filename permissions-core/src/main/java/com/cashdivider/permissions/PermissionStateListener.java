@@ -0,0 +1,15 @@
+package com.cashdivider.permissions;
+
+/**
+ * Listener for the permission grant state changes
+ *
+ *  Called on the main thread, only when the state really changed (granted/revoked from Settings or a request)
+ */
+public interface PermissionStateListener {
+
+    /**
+     * @param permission - Manifest.permission.READ_CONTACTS, etc
+     * @param granted - New state
+     */
+    void onPermissionStateChanged(String permission, boolean granted);
+}
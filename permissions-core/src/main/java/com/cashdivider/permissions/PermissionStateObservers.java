@@ -0,0 +1,142 @@
+package com.cashdivider.permissions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the PermissionStateListener, with the last known state of every observed permission
+ *
+ *  States read by PermissionFlow are compared with the last known state, listeners are called
+ *  only on a change. Thread safe, listeners are called on the main thread
+ */
+class PermissionStateObservers {
+
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Boolean> lastStates = new ConcurrentHashMap<>();
+    private final PermissionScheduler scheduler;
+
+    private volatile Object context = null;
+    private volatile Set<String> observedPermissions = Collections.emptySet();
+
+    PermissionStateObservers(PermissionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /**
+     * Context the observed permissions are checked with
+     *
+     * @return null if no listener was added
+     */
+    Object getContext() {
+        return context;
+    }
+
+    /**
+     * Union of the permissions of all the listeners - one check per permission whatever the number of listeners
+     *
+     * @return
+     */
+    Set<String> getObservedPermissions() {
+        return observedPermissions;
+    }
+
+    /**
+     * Adding a listener
+     *
+     * @param context - application context
+     * @param listener
+     * @param permissions
+     */
+    synchronized void add(Object context, PermissionStateListener listener, String[] permissions) {
+        this.context = context;
+        registrations.add(new Registration(listener, permissions));
+        updateObservedPermissions();
+    }
+
+    /**
+     * Removing all the registrations of a listener
+     *
+     * @param listener
+     */
+    synchronized void remove(PermissionStateListener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                registrations.remove(registration);
+            }
+        }
+        updateObservedPermissions();
+    }
+
+    private void updateObservedPermissions() {
+        Set<String> permissions = new HashSet<>();
+        for (Registration registration : registrations) {
+            permissions.addAll(registration.permissions);
+        }
+        lastStates.keySet().retainAll(permissions);
+        observedPermissions = Collections.unmodifiableSet(permissions);
+    }
+
+    /**
+     * Setting the state of a newly observed permission, without notifying
+     *
+     * @param permission
+     * @param granted
+     */
+    void setInitialState(String permission, boolean granted) {
+        lastStates.putIfAbsent(permission, granted);
+    }
+
+    /**
+     * Comparing a state read from the system/request with the last known state
+     *
+     * @param permission
+     * @param granted
+     */
+    void onStateRead(final String permission, final boolean granted) {
+        if (!observedPermissions.contains(permission)) {
+            return;
+        }
+        Boolean previousGranted = lastStates.put(permission, granted);
+        if (previousGranted == null || previousGranted == granted) {
+            return;
+        }
+
+        if (scheduler.isMainThread()) {
+            notifyListeners(permission, granted);
+            return;
+        }
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifyListeners(permission, granted);
+            }
+        });
+    }
+
+    private void notifyListeners(String permission, boolean granted) {
+        for (Registration registration : registrations) {
+            if (registration.permissions.contains(permission)) {
+                registration.listener.onPermissionStateChanged(permission, granted);
+            }
+        }
+    }
+
+    private static class Registration {
+
+        final PermissionStateListener listener;
+        final Set<String> permissions;
+
+        Registration(PermissionStateListener listener, String[] permissions) {
+            this.listener = listener;
+            this.permissions = new HashSet<>(Arrays.asList(permissions));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.cashdivider.permissions;
+
+/**
+ * Trace sections of the permission flows
+ *
+ *  Sections are nestable and must be ended on the thread that began them.
+ *  Async sections can span threads, matched by name and cookie. Must be cheap - called on the main thread
+ */
+public interface PermissionTracer {
+
+    void beginSection(String name);
+
+    void endSection();
+
+    /**
+     * @param name
+     * @param cookie - Unique among the async sections with the same name running at the same time
+     */
+    void beginAsyncSection(String name, int cookie);
+
+    void endAsyncSection(String name, int cookie);
+}
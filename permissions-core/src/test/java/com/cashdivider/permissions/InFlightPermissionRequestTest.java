@@ -0,0 +1,135 @@
+package com.cashdivider.permissions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightPermissionRequestTest {
+
+    private static final String HOST_KEY = "MainActivity#1";
+
+    private final Object host = new Object();
+    private final PermissionFlow.ResultCallback callback = new PermissionFlow.ResultCallback() {
+        @Override
+        public void onPermissionResult(PermissionResult result) {
+        }
+    };
+
+    private InFlightPermissionRequest request;
+
+    @Before
+    public void setUp() {
+        request = new InFlightPermissionRequest(host, HOST_KEY, null);
+    }
+
+    @Test
+    public void addWaiterMergesPermissionsAndMessages() {
+        request.addWaiter(host, HOST_KEY, "Camera", callback, new String[]{TestPermissions.CAMERA});
+        request.addWaiter(host, HOST_KEY, "Sms", callback, new String[]{TestPermissions.CAMERA, TestPermissions.READ_SMS, ""});
+        request.addWaiter(host, HOST_KEY, "Camera", callback, new String[]{TestPermissions.READ_SMS});
+
+        assertArrayEquals(new String[]{TestPermissions.CAMERA, TestPermissions.READ_SMS}, request.getPermissions());
+        assertEquals("Camera\n\nSms", request.getMessage());
+        assertEquals(3, request.getWaiterCount());
+    }
+
+    @Test
+    public void messageIsNullWithoutCallerMessage() {
+        request.addWaiter(host, HOST_KEY, null, callback, new String[]{TestPermissions.CAMERA});
+
+        assertNull(request.getMessage());
+    }
+
+    @Test
+    public void coversAndOverlaps() {
+        request.addWaiter(host, HOST_KEY, null, callback, new String[]{TestPermissions.CAMERA, TestPermissions.READ_SMS});
+
+        assertTrue(request.covers(new String[]{TestPermissions.READ_SMS}));
+        assertFalse(request.covers(new String[]{TestPermissions.READ_SMS, TestPermissions.READ_CONTACTS}));
+        assertTrue(request.overlaps(new String[]{TestPermissions.READ_SMS, TestPermissions.READ_CONTACTS}));
+        assertFalse(request.overlaps(new String[]{TestPermissions.READ_CONTACTS}));
+        assertArrayEquals(new String[]{TestPermissions.READ_CONTACTS},
+                request.getUncoveredPermissions(new String[]{TestPermissions.CAMERA, TestPermissions.READ_CONTACTS}));
+    }
+
+    @Test
+    public void recreatedHostReplacesOnlyCoveredCallers() {
+        request.addWaiter(host, HOST_KEY, null, callback, new String[]{TestPermissions.CAMERA});
+        request.addWaiter(host, HOST_KEY, null, callback, new String[]{TestPermissions.READ_SMS});
+        request.detachWaiters(host);
+
+        Object newHost = new Object();
+        request.dropDetachedWaiters(HOST_KEY, new String[]{TestPermissions.CAMERA});
+        request.addWaiter(newHost, HOST_KEY, null, callback, new String[]{TestPermissions.CAMERA});
+
+        List<InFlightPermissionRequest.Waiter> waiters = request.takeWaiters();
+        assertEquals(2, waiters.size());
+        assertArrayEquals(new String[]{TestPermissions.READ_SMS}, waiters.get(0).permissions);
+        assertTrue(waiters.get(0).detached);
+        assertFalse(waiters.get(1).detached);
+        assertFalse(request.hasWaiters());
+    }
+
+    @Test
+    public void dropWaitersRemovesHostAndItsDetachedInstances() {
+        Object oldHost = new Object();
+        Object otherHost = new Object();
+        request.addWaiter(oldHost, HOST_KEY, null, callback, new String[]{TestPermissions.CAMERA});
+        request.detachWaiters(oldHost);
+        request.addWaiter(host, HOST_KEY, null, callback, new String[]{TestPermissions.CAMERA});
+        request.addWaiter(otherHost, "OtherActivity#1", null, callback, new String[]{TestPermissions.CAMERA});
+
+        request.dropWaiters(host, HOST_KEY);
+
+        List<InFlightPermissionRequest.Waiter> waiters = request.takeWaiters();
+        assertEquals(1, waiters.size());
+        assertEquals("OtherActivity#1", waiters.get(0).hostKey);
+    }
+
+    @Test
+    public void detachedHostWaitsForSameKey() {
+        Object rootView = new Object();
+        InFlightPermissionRequest snackbarRequest = new InFlightPermissionRequest(host, HOST_KEY, rootView);
+        assertFalse(snackbarRequest.isAwaitingHost(HOST_KEY));
+
+        snackbarRequest.detachHost();
+        assertNull(snackbarRequest.rootView);
+        assertTrue(snackbarRequest.hasRootView());
+        assertFalse(snackbarRequest.isAwaitingHost("OtherActivity#1"));
+        assertTrue(snackbarRequest.isAwaitingHost(HOST_KEY));
+
+        Object newHost = new Object();
+        Object newRootView = new Object();
+        snackbarRequest.attachHost(newHost, newRootView);
+        assertSame(newHost, snackbarRequest.host);
+        assertSame(newRootView, snackbarRequest.rootView);
+        assertFalse(snackbarRequest.isAwaitingHost(HOST_KEY));
+    }
+
+    @Test
+    public void createResultUsesCallerPermissionOrder() {
+        InFlightPermissionRequest.Waiter waiter = new InFlightPermissionRequest.Waiter(HOST_KEY, 0, callback,
+                new String[]{TestPermissions.READ_SMS, TestPermissions.CAMERA, TestPermissions.READ_CONTACTS});
+
+        PermissionResult result = waiter.createResult(
+                new HashSet<>(Arrays.asList(TestPermissions.CAMERA, TestPermissions.RECEIVE_SMS)),
+                Collections.singleton(TestPermissions.READ_CONTACTS));
+
+        assertEquals(1L << 1, result.getGrantedMask());
+        assertEquals(1L << 2, result.getPermanentlyDeniedMask());
+        assertFalse(result.isGranted(TestPermissions.READ_SMS));
+        assertTrue(result.isGranted(TestPermissions.CAMERA));
+        assertTrue(result.isPermanentlyDenied(TestPermissions.READ_CONTACTS));
+    }
+}
@@ -0,0 +1,145 @@
+package com.cashdivider.permissions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Already granted path of the checks, measured with the per-thread allocation counter of the JVM -
+ * no allocation per call once the grant states are cached
+ *
+ *  The total of all the calls is compared against a fixed slack (one-off allocations of the JIT compiling or
+ *  deoptimizing the check) plus one empty measurement - 16 bytes per call would be over 1 MB.
+ *  A JVM without the counter fails too, the test is never skipped
+ */
+public class PermissionFlowAllocationTest {
+
+    private static final int WARM_UP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 100000;
+    private static final long SLACK_BYTES = 4096;
+
+    private static final String[] PERMISSIONS = {TestPermissions.CAMERA, TestPermissions.READ_SMS};
+    private static final long PERMISSION_MASK = TestPermissions.CAMERA_BIT | TestPermissions.READ_SMS_BIT;
+    private static final String MESSAGE = "Needed for the test";
+
+    private static final Runnable NO_CHECK = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private PermissionFlow flow;
+    private ScriptedPermissionPlatform.Host host;
+    private CountingCallback callback;
+
+    @Before
+    public void setUp() {
+        assertTrue("No per-thread allocation counter", ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue("No per-thread allocation counter", threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        TestPermissions.register();
+        ScriptedPermissionPlatform platform = new ScriptedPermissionPlatform();
+        platform.setPermissionState(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        platform.setPermissionState(TestPermissions.READ_SMS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        flow = new PermissionFlow(platform, new TestPermissionScheduler());
+        host = new ScriptedPermissionPlatform.Host("MainActivity#1");
+        callback = new CountingCallback();
+    }
+
+    @Test
+    public void checkPermissionWithStringsDoesNotAllocate() {
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                flow.checkPermission(host, null, MESSAGE, callback, PERMISSIONS);
+            }
+        };
+
+        assertNoAllocation(check);
+        assertEquals(WARM_UP_ITERATIONS + ITERATIONS, callback.grantedCount);
+    }
+
+    @Test
+    public void checkPermissionWithMaskDoesNotAllocate() {
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                flow.checkPermission(host, null, MESSAGE, callback, PERMISSION_MASK);
+            }
+        };
+
+        assertNoAllocation(check);
+        assertEquals(WARM_UP_ITERATIONS + ITERATIONS, callback.grantedCount);
+    }
+
+    @Test
+    public void isPermissionAlreadyApprovedDoesNotAllocate() {
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                if (flow.isPermissionAlreadyApproved(host, PERMISSIONS) && flow.isPermissionAlreadyApproved(host, PERMISSION_MASK)) {
+                    callback.permissionGranted();
+                }
+            }
+        };
+
+        assertNoAllocation(check);
+        assertEquals(WARM_UP_ITERATIONS + ITERATIONS, callback.grantedCount);
+    }
+
+    /**
+     * Running the check ITERATIONS times after the warm up (grant states cached, code compiled) -
+     * failing if they allocate more than the slack
+     *
+     * @param check
+     */
+    private void assertNoAllocation(Runnable check) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            check.run();
+        }
+        long slackBytes = SLACK_BYTES + measureAllocatedBytes(NO_CHECK);
+
+        long allocatedBytes = measureAllocatedBytes(check);
+        assertTrue("Allocation counter unavailable: " + allocatedBytes, allocatedBytes >= 0);
+        assertTrue(allocatedBytes + " bytes allocated by " + ITERATIONS + " calls, slack " + slackBytes, allocatedBytes <= slackBytes);
+    }
+
+    /**
+     * Bytes allocated by the current thread running the check ITERATIONS times
+     *
+     * @param check
+     * @return negative if the counter is unavailable
+     */
+    private long measureAllocatedBytes(Runnable check) {
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        if (start < 0) {
+            return -1;
+        }
+        for (int i = 0; i < ITERATIONS; i++) {
+            check.run();
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - start;
+    }
+
+    private static class CountingCallback implements PermissionFlow.GrantCallback {
+
+        int grantedCount = 0;
+
+        @Override
+        public void permissionGranted() {
+            grantedCount++;
+        }
+
+        @Override
+        public void permissionDenied() {
+        }
+    }
+}
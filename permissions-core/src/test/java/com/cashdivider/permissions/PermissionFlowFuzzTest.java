@@ -0,0 +1,350 @@
+package com.cashdivider.permissions;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Random scenarios of concurrent requests, dialog answers and host recreations, checking after each of them:
+ * one callback per caller (exactly one while its host lives), no request left in flight, no permission
+ * asked by two open system dialogs
+ *
+ *  Every scenario has its own flow, platform and main thread, they run in parallel. Reproducible from the seed:
+ *  -Dpermissions.fuzz.seed=<seed of the failed scenario> -Dpermissions.fuzz.scenarios=1
+ */
+public class PermissionFlowFuzzTest {
+
+    private static final long DEFAULT_SEED = 20170321L;
+    private static final int DEFAULT_SCENARIO_COUNT = 2000;
+    private static final int STEPS_PER_SCENARIO = 60;
+    private static final int MAX_SETTLE_STEPS = 10000;
+
+    private static final String[] PERMISSIONS = {
+            TestPermissions.CAMERA,
+            TestPermissions.READ_SMS,
+            TestPermissions.RECEIVE_SMS,
+            TestPermissions.READ_CONTACTS,
+            TestPermissions.INTERNET,
+            "test.permission.UNDECLARED"
+    };
+    private static final String[] HOST_KEYS = {"MainActivity#1", "SettingsActivity#1", "MainActivity#2"};
+
+    @BeforeClass
+    public static void registerPermissions() {
+        TestPermissions.register();
+    }
+
+    @Test
+    public void randomScenariosKeepInvariants() throws Exception {
+        long baseSeed = Long.getLong("permissions.fuzz.seed", DEFAULT_SEED);
+        int scenarioCount = Integer.getInteger("permissions.fuzz.scenarios", DEFAULT_SCENARIO_COUNT);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<String> failures = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < scenarioCount; i++) {
+                final long seed = baseSeed + i;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return new Scenario(seed).run();
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                String failure = result.get();
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        System.out.println(String.format(Locale.US, "PermissionFlowFuzzTest: %d scenarios on %d threads in %d ms - %.0f scenarios/s (seed %d)",
+                scenarioCount, threadCount, elapsedNanos / 1000000, scenarioCount * 1e9 / elapsedNanos, baseSeed));
+        if (!failures.isEmpty()) {
+            fail(failures.size() + " failed scenarios, first: " + failures.get(0));
+        }
+    }
+
+    /**
+     * One random scenario - created and run on the same thread, its main thread
+     */
+    private static class Scenario {
+
+        private final long seed;
+        private final Random random;
+        private final List<Call> calls = new ArrayList<>();
+        private final ScriptedPermissionPlatform.Host[] hosts = new ScriptedPermissionPlatform.Host[HOST_KEYS.length];
+
+        private ScriptedPermissionPlatform platform;
+        private TestPermissionScheduler scheduler;
+        private PermissionFlow flow;
+
+        Scenario(long seed) {
+            this.seed = seed;
+            this.random = new Random(seed);
+        }
+
+        /**
+         * Running the scenario
+         *
+         * @return null if all the invariants hold, the broken one otherwise
+         */
+        String run() {
+            try {
+                setUp();
+                for (int step = 0; step < STEPS_PER_SCENARIO; step++) {
+                    runStep();
+                }
+                if (!settle()) {
+                    return "seed " + seed + ": still running after " + MAX_SETTLE_STEPS + " steps";
+                }
+                return checkInvariants();
+            } catch (RuntimeException e) {
+                return "seed " + seed + ": " + e;
+            }
+        }
+
+        private void setUp() {
+            platform = new ScriptedPermissionPlatform();
+            platform.setRandomAnswers(seed);
+            platform.setHoldRequests(random.nextBoolean());
+            platform.setSystemRationale(random.nextBoolean());
+            platform.setRequestOngoingErrors(random.nextInt(3));
+
+            scheduler = new TestPermissionScheduler();
+            flow = new PermissionFlow(platform, scheduler);
+            flow.setRequestBatchingWindow(random.nextBoolean() ? PermissionFlow.REQUEST_BATCHING_DISABLED : PermissionFlow.REQUEST_BATCHING_ONE_FRAME);
+            flow.setPermissionGroupExpansion(random.nextBoolean());
+            if (random.nextInt(4) == 0) {
+                // No cooldown - the budget keeps the scenario independent from the clock
+                flow.setPermissionRequestPolicy(new PermissionRequestPolicy(0, 0, 1 + random.nextInt(3)));
+            }
+
+            for (int i = 0; i < hosts.length; i++) {
+                hosts[i] = new ScriptedPermissionPlatform.Host(HOST_KEYS[i], new Object());
+            }
+        }
+
+        private void runStep() {
+            int hostIndex = random.nextInt(hosts.length);
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                    checkPermission(hosts[hostIndex]);
+                    break;
+                case 4:
+                    platform.answerPendingDialog(random.nextBoolean());
+                    break;
+                case 5:
+                    platform.answerPendingRequest();
+                    break;
+                case 6:
+                    scheduler.runPending();
+                    break;
+                case 7:
+                    recreateHost(hostIndex);
+                    break;
+                case 8:
+                    finishHost(hostIndex);
+                    break;
+                default:
+                    changeSettings();
+                    break;
+            }
+        }
+
+        private void checkPermission(ScriptedPermissionPlatform.Host host) {
+            String[] permissions = getRandomPermissions();
+            String message = random.nextInt(4) == 0 ? null : "Message " + random.nextInt(3);
+            Object rootView = random.nextInt(3) == 0 ? host.rootView : null;
+            if (random.nextInt(4) == 0) {
+                platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+            }
+            checkPermission(host, rootView, message, permissions);
+        }
+
+        private void checkPermission(ScriptedPermissionPlatform.Host host, Object rootView, String message, String[] permissions) {
+            Call call = new Call(host, permissions);
+            calls.add(call);
+            if (random.nextBoolean()) {
+                flow.checkPermission(host, rootView, message, call, permissions);
+            } else {
+                flow.checkPermission(host, rootView, message, call.resultCallback, permissions);
+            }
+        }
+
+        private String[] getRandomPermissions() {
+            List<String> permissions = new ArrayList<>();
+            int count = 1 + random.nextInt(3);
+            while (permissions.size() < count) {
+                String permission = PERMISSIONS[random.nextInt(PERMISSIONS.length)];
+                if (!permissions.contains(permission)) {
+                    permissions.add(permission);
+                }
+            }
+            return permissions.toArray(new String[permissions.size()]);
+        }
+
+        /**
+         * Configuration change - the new instance asks again (or not) for what the old one asked, then is resumed
+         *
+         * @param hostIndex
+         */
+        private void recreateHost(int hostIndex) {
+            ScriptedPermissionPlatform.Host oldHost = hosts[hostIndex];
+            flow.onHostDestroyed(oldHost, true);
+            List<Call> oldCalls = markHostDestroyed(oldHost);
+
+            ScriptedPermissionPlatform.Host newHost = new ScriptedPermissionPlatform.Host(oldHost.key, new Object());
+            hosts[hostIndex] = newHost;
+            for (Call oldCall : oldCalls) {
+                if (random.nextBoolean()) {
+                    checkPermission(newHost, random.nextBoolean() ? newHost.rootView : null, "Message 0", oldCall.permissions);
+                }
+            }
+            flow.onHostResumed(newHost);
+        }
+
+        /**
+         * Host finished, then opened again later
+         *
+         * @param hostIndex
+         */
+        private void finishHost(int hostIndex) {
+            ScriptedPermissionPlatform.Host oldHost = hosts[hostIndex];
+            flow.onHostDestroyed(oldHost, false);
+            markHostDestroyed(oldHost);
+
+            ScriptedPermissionPlatform.Host newHost = new ScriptedPermissionPlatform.Host(oldHost.key, new Object());
+            hosts[hostIndex] = newHost;
+            flow.onHostResumed(newHost);
+        }
+
+        private List<Call> markHostDestroyed(ScriptedPermissionPlatform.Host host) {
+            List<Call> hostCalls = new ArrayList<>();
+            for (Call call : calls) {
+                if (call.host == host) {
+                    call.hostDestroyed = true;
+                    hostCalls.add(call);
+                }
+            }
+            return hostCalls;
+        }
+
+        /**
+         * User back from Settings or from background
+         */
+        private void changeSettings() {
+            if (random.nextBoolean()) {
+                platform.setPermissionState(PERMISSIONS[random.nextInt(PERMISSIONS.length)], random.nextInt(ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY + 1));
+            }
+            flow.onForeground();
+        }
+
+        /**
+         * Answering everything left open, positively
+         *
+         * @return false if the flow never settles
+         */
+        private boolean settle() {
+            for (int i = 0; i < MAX_SETTLE_STEPS; i++) {
+                if (scheduler.runPending() > 0
+                        || platform.answerPendingDialog(true)
+                        || platform.answerPendingRequest()) {
+                    continue;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private String checkInvariants() {
+            for (Call call : calls) {
+                if (call.callbackCount > 1) {
+                    return "seed " + seed + ": " + call + " called back " + call.callbackCount + " times";
+                }
+                if (call.callbackCount == 0 && !call.hostDestroyed) {
+                    return "seed " + seed + ": " + call + " never called back";
+                }
+                if (call.wrongResult) {
+                    return "seed " + seed + ": " + call + " received the result of other permissions";
+                }
+            }
+            if (flow.getInFlightRequestCount() != 0) {
+                return "seed " + seed + ": " + flow.getInFlightRequestCount() + " requests leaked";
+            }
+            if (platform.getDuplicatePromptCount() != 0) {
+                return "seed " + seed + ": " + platform.getDuplicatePromptCount() + " duplicate prompts";
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Caller of a scenario - counting its callbacks
+     */
+    private static class Call implements PermissionFlow.GrantCallback {
+
+        final ScriptedPermissionPlatform.Host host;
+        final String[] permissions;
+        int callbackCount = 0;
+        boolean hostDestroyed = false;
+        boolean wrongResult = false;
+
+        final PermissionFlow.ResultCallback resultCallback = new PermissionFlow.ResultCallback() {
+            @Override
+            public void onPermissionResult(PermissionResult result) {
+                callbackCount++;
+                if (result.size() != permissions.length) {
+                    wrongResult = true;
+                    return;
+                }
+                for (int i = 0; i < permissions.length; i++) {
+                    if (!permissions[i].equals(result.getPermission(i))) {
+                        wrongResult = true;
+                    }
+                }
+            }
+        };
+
+        Call(ScriptedPermissionPlatform.Host host, String[] permissions) {
+            this.host = host;
+            this.permissions = permissions;
+        }
+
+        @Override
+        public void permissionGranted() {
+            callbackCount++;
+        }
+
+        @Override
+        public void permissionDenied() {
+            callbackCount++;
+        }
+
+        @Override
+        public String toString() {
+            return "call " + Arrays.toString(permissions) + " of " + host.key;
+        }
+    }
+}
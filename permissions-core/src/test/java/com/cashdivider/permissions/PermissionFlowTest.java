@@ -0,0 +1,570 @@
+package com.cashdivider.permissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionFlowTest {
+
+    private static final String MESSAGE = "Needed for the test";
+
+    private ScriptedPermissionPlatform platform;
+    private TestPermissionScheduler scheduler;
+    private PermissionFlow flow;
+    private ScriptedPermissionPlatform.Host host;
+
+    @Before
+    public void setUp() {
+        TestPermissions.register();
+        platform = new ScriptedPermissionPlatform();
+        scheduler = new TestPermissionScheduler();
+        flow = new PermissionFlow(platform, scheduler);
+        host = new ScriptedPermissionPlatform.Host("MainActivity#1");
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.runPending();
+        assertEquals(0, flow.getInFlightRequestCount());
+    }
+
+    @Test
+    public void grantedPermissionAnsweredWithoutRequest() {
+        platform.setPermissionState(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(0, platform.getRequestCount());
+        assertEquals(0, platform.getDialogCount());
+    }
+
+    @Test
+    public void callersOfSamePermissionShareOnePrompt() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder first = new GrantRecorder();
+        GrantRecorder second = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, first, TestPermissions.CAMERA);
+        flow.checkPermission(host, null, MESSAGE, second, TestPermissions.CAMERA);
+        assertEquals(1, flow.getInFlightRequestCount());
+
+        assertTrue(platform.answerPendingDialog(true));
+
+        assertEquals(1, first.grantedCount);
+        assertEquals(1, second.grantedCount);
+        assertEquals(1, platform.getDialogCount());
+        assertEquals(1, platform.getRequestCount());
+    }
+
+    @Test
+    public void otherPermissionQueuedUntilResolved() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_DENY);
+        GrantRecorder camera = new GrantRecorder();
+        GrantRecorder contacts = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, camera, TestPermissions.CAMERA);
+        flow.checkPermission(host, null, MESSAGE, contacts, TestPermissions.READ_CONTACTS);
+        assertEquals(2, flow.getInFlightRequestCount());
+
+        platform.answerPendingDialog(true);
+        assertEquals(1, camera.grantedCount);
+        assertEquals(0, contacts.getCallbackCount());
+
+        // Next request started on the main thread
+        scheduler.runPending();
+        assertEquals(1, contacts.deniedCount);
+
+        List<String[]> requests = platform.getRequests();
+        assertEquals(2, requests.size());
+        assertArrayEquals(new String[]{TestPermissions.CAMERA}, requests.get(0));
+        assertArrayEquals(new String[]{TestPermissions.READ_CONTACTS}, requests.get(1));
+    }
+
+    @Test
+    public void otherPermissionsAddedDuringRationaleQueued() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder first = new GrantRecorder();
+        GrantRecorder second = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, first, TestPermissions.CAMERA);
+        // Rationale of CAMERA showing - started, READ_CONTACTS is not merged into it
+        flow.checkPermission(host, null, MESSAGE, second, TestPermissions.CAMERA, TestPermissions.READ_CONTACTS);
+        assertEquals(2, flow.getInFlightRequestCount());
+
+        platform.answerPendingDialog(true);
+        scheduler.runPending();
+
+        assertEquals(1, first.grantedCount);
+        assertEquals(1, second.grantedCount);
+        assertEquals(2, platform.getDialogCount());
+        assertEquals(2, platform.getRequestCount());
+        assertArrayEquals(new String[]{TestPermissions.CAMERA}, platform.getRequests().get(0));
+    }
+
+    @Test
+    public void fullQueueDeniesWithoutRequest() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        flow.checkPermission(host, null, MESSAGE, new GrantRecorder(), TestPermissions.CAMERA);
+
+        List<GrantRecorder> queued = new ArrayList<>();
+        for (int i = 0; i < PermissionFlow.MAX_PENDING_REQUESTS; i++) {
+            GrantRecorder callback = new GrantRecorder();
+            flow.checkPermission(host, null, MESSAGE, callback, "test.permission.P" + i);
+            queued.add(callback);
+        }
+        assertEquals(PermissionFlow.MAX_PENDING_REQUESTS + 1, flow.getInFlightRequestCount());
+
+        GrantRecorder rejected = new GrantRecorder();
+        flow.checkPermission(host, null, MESSAGE, rejected, "test.permission.REJECTED");
+        assertEquals(1, rejected.deniedCount);
+        assertEquals(PermissionFlow.MAX_PENDING_REQUESTS + 1, flow.getInFlightRequestCount());
+
+        // Queued callers were not answered
+        for (GrantRecorder callback : queued) {
+            assertEquals(0, callback.getCallbackCount());
+        }
+
+        flow.onHostDestroyed(host, false);
+        assertEquals(0, flow.getInFlightRequestCount());
+        assertEquals(0, platform.getRequestCount());
+    }
+
+    @Test
+    public void recreatedHostContinuesRequest() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder oldCallback = new GrantRecorder();
+        GrantRecorder newCallback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, oldCallback, TestPermissions.CAMERA);
+        flow.onHostDestroyed(host, true);
+        assertEquals(0, platform.getPendingDialogCount());
+        assertEquals(1, flow.getInFlightRequestCount());
+
+        // Same activity created again - asks again, then resumed
+        ScriptedPermissionPlatform.Host newHost = new ScriptedPermissionPlatform.Host(host.key);
+        flow.checkPermission(newHost, null, MESSAGE, newCallback, TestPermissions.CAMERA);
+        flow.onHostResumed(newHost);
+
+        assertEquals(0, oldCallback.getCallbackCount());
+        assertEquals(1, newCallback.grantedCount);
+        assertEquals(2, platform.getDialogCount());
+        assertEquals(1, platform.getRequestCount());
+    }
+
+    @Test
+    public void otherHostDoesNotRestartRequest() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+        flow.onHostDestroyed(host, true);
+        flow.onHostResumed(new ScriptedPermissionPlatform.Host("OtherActivity#1"));
+
+        assertEquals(1, platform.getDialogCount());
+        assertEquals(1, flow.getInFlightRequestCount());
+
+        flow.onHostDestroyed(host, false);
+        assertEquals(0, callback.getCallbackCount());
+    }
+
+    @Test
+    public void finalDestroyCancelsRequestAndDropsCallers() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+        flow.onHostDestroyed(host, false);
+
+        assertEquals(0, callback.getCallbackCount());
+        assertEquals(0, platform.getPendingDialogCount());
+        assertEquals(0, platform.getRequestCount());
+        assertEquals(0, flow.getInFlightRequestCount());
+    }
+
+    @Test
+    public void dispatchedRequestOfFinishedHostDoesNotBlockQueue() {
+        platform.setHoldRequests(true);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        ScriptedPermissionPlatform.Host otherHost = new ScriptedPermissionPlatform.Host("OtherActivity#1");
+        GrantRecorder callback = new GrantRecorder();
+        GrantRecorder otherCallback = new GrantRecorder();
+
+        flow.checkPermission(host, null, null, callback, TestPermissions.CAMERA);
+        flow.checkPermission(otherHost, null, null, otherCallback, TestPermissions.READ_CONTACTS);
+        assertEquals(1, platform.getPendingRequestCount());
+
+        // System dialog still open, nobody waits for its answer anymore
+        flow.onHostDestroyed(host, false);
+        scheduler.runPending();
+        assertEquals(2, platform.getPendingRequestCount());
+        assertEquals(1, flow.getInFlightRequestCount());
+
+        platform.answerPendingRequest();
+        platform.answerPendingRequest();
+        assertEquals(0, callback.getCallbackCount());
+        assertEquals(1, otherCallback.grantedCount);
+    }
+
+    @Test
+    public void queuedRequestWaitsForAbandonedPromptOfSamePermission() {
+        platform.setHoldRequests(true);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        ScriptedPermissionPlatform.Host otherHost = new ScriptedPermissionPlatform.Host("OtherActivity#1");
+        GrantRecorder otherCallback = new GrantRecorder();
+
+        flow.checkPermission(host, null, null, new GrantRecorder(), TestPermissions.CAMERA);
+        flow.checkPermission(otherHost, null, null, otherCallback, TestPermissions.CAMERA, TestPermissions.READ_CONTACTS);
+        flow.onHostDestroyed(host, false);
+        scheduler.runPending();
+
+        // CAMERA still asked by the open system dialog
+        assertEquals(1, platform.getRequestCount());
+
+        platform.answerPendingRequest();
+        scheduler.runPending();
+        platform.answerPendingRequest();
+
+        assertEquals(1, otherCallback.grantedCount);
+        assertEquals(2, platform.getRequestCount());
+        assertEquals(0, platform.getDuplicatePromptCount());
+    }
+
+    @Test
+    public void requestOfDestroyedHostKeptForOtherHostCallers() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        ScriptedPermissionPlatform.Host otherHost = new ScriptedPermissionPlatform.Host("OtherActivity#1");
+        GrantRecorder callback = new GrantRecorder();
+        GrantRecorder otherCallback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+        flow.checkPermission(otherHost, null, MESSAGE, otherCallback, TestPermissions.CAMERA);
+        flow.onHostDestroyed(host, true);
+        flow.onHostResumed(new ScriptedPermissionPlatform.Host(host.key));
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(1, otherCallback.grantedCount);
+        assertEquals(1, platform.getRequestCount());
+    }
+
+    @Test
+    public void requestOngoingErrorRetried() {
+        platform.setRequestOngoingErrors(2);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, null, callback, TestPermissions.CAMERA);
+        scheduler.runPending();
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(3, platform.getRequestCount());
+        assertEquals(1, platform.getPromptCount());
+    }
+
+    @Test
+    public void grantedWhileQueuedResolvedWithoutRequest() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        GrantRecorder contacts = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, new GrantRecorder(), TestPermissions.CAMERA);
+        flow.checkPermission(host, null, MESSAGE, contacts, TestPermissions.READ_CONTACTS);
+        platform.setPermissionState(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        flow.invalidatePermissionCache();
+        platform.answerPendingDialog(false);
+        scheduler.runPending();
+
+        assertEquals(1, contacts.grantedCount);
+        assertEquals(0, platform.getRequestCount());
+    }
+
+    @Test
+    public void singlePermissionGranted() {
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(1, platform.getDialogCount());
+        assertEquals(1, platform.getPromptCount());
+        assertTrue(flow.isPermissionAlreadyApproved(host, TestPermissions.CAMERA));
+        assertEquals(PermissionOutcomeStore.OUTCOME_GRANTED, flow.getPermissionOutcomeStore().getOutcome(TestPermissions.CAMERA));
+    }
+
+    @Test
+    public void singlePermissionDeniedShowsSnackbar() {
+        ScriptedPermissionPlatform.Host snackbarHost = new ScriptedPermissionPlatform.Host("MainActivity#1", new Object());
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(snackbarHost, snackbarHost.rootView, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.deniedCount);
+        assertEquals(1, platform.getSnackbarCount());
+        assertEquals(0, platform.getSettingsDialogCount());
+        assertEquals(PermissionOutcomeStore.OUTCOME_DENIED, flow.getPermissionOutcomeStore().getOutcome(TestPermissions.CAMERA));
+
+        assertTrue(platform.clickSnackbarAction(flow));
+        assertEquals(1, platform.getSettingsCount());
+    }
+
+    @Test
+    public void singlePermissionDeniedWithoutRootViewShowsNothing() {
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.deniedCount);
+        assertEquals(0, platform.getSnackbarCount());
+        assertEquals(0, platform.getSettingsDialogCount());
+    }
+
+    @Test
+    public void singlePermissionPermanentlyDeniedShowsSettingsDialog() {
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY);
+        ResultRecorder callback = new ResultRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.results.size());
+        assertTrue(callback.results.get(0).isPermanentlyDenied(TestPermissions.CAMERA));
+        assertEquals(1, platform.getSettingsDialogCount());
+        assertEquals(1, platform.getSettingsCount());
+    }
+
+    @Test
+    public void permanentlyDeniedPermissionSkipsRationale() {
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY);
+        flow.checkPermission(host, null, null, new GrantRecorder(), TestPermissions.CAMERA);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        // Asked again, answered by the system without any dialog
+        assertEquals(1, callback.deniedCount);
+        assertEquals(2, platform.getRequestCount());
+        assertEquals(1, platform.getPromptCount());
+        assertEquals(1, platform.getDialogCount());
+        assertEquals(1, platform.getSettingsDialogCount());
+    }
+
+    @Test
+    public void restoredPermanentlyDeniedOutcomeStillRequested() {
+        // Backup restored or permissions reset - never asked on this device, no rationale from the system either
+        flow.getPermissionOutcomeStore().restore(TestPermissions.CAMERA, PermissionOutcomeStore.OUTCOME_PERMANENTLY_DENIED, System.currentTimeMillis());
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(1, platform.getRequestCount());
+        assertEquals(1, platform.getPromptCount());
+        assertEquals(0, platform.getSettingsDialogCount());
+        assertEquals(PermissionOutcomeStore.OUTCOME_GRANTED, flow.getPermissionOutcomeStore().getOutcome(TestPermissions.CAMERA));
+    }
+
+    @Test
+    public void settingsDialogKeptWhileQueuedRationaleShown() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder callback = new GrantRecorder();
+        GrantRecorder queuedCallback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+        flow.checkPermission(host, null, MESSAGE, queuedCallback, TestPermissions.READ_CONTACTS);
+        platform.answerPendingDialog(true);
+        scheduler.runPending();
+
+        // Settings dialog of the first request and rationale of the queued one, both showing
+        assertEquals(1, callback.deniedCount);
+        assertEquals(1, platform.getSettingsDialogCount());
+        assertEquals(2, platform.getPendingDialogCount());
+
+        platform.answerPendingDialog(true);
+        assertEquals(1, platform.getSettingsCount());
+
+        platform.answerPendingDialog(true);
+        assertEquals(1, queuedCallback.grantedCount);
+        assertEquals(2, platform.getRequestCount());
+    }
+
+    @Test
+    public void multiplePermissionsGranted() {
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_GRANT);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA_BIT | TestPermissions.READ_CONTACTS_BIT);
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(1, platform.getRequestCount());
+        assertEquals(2, platform.getPromptCount());
+        assertTrue(flow.isPermissionAlreadyApproved(host, TestPermissions.CAMERA_BIT | TestPermissions.READ_CONTACTS_BIT));
+    }
+
+    @Test
+    public void multiplePermissionsPartiallyGranted() {
+        platform.setPermissionState(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        platform.setRequestAnswer(TestPermissions.READ_SMS, ScriptedPermissionPlatform.ANSWER_DENY);
+        platform.setRequestAnswer(TestPermissions.READ_CONTACTS, ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY);
+        ResultRecorder callback = new ResultRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA, TestPermissions.READ_SMS, TestPermissions.READ_CONTACTS);
+
+        assertEquals(1, callback.results.size());
+        PermissionResult result = callback.results.get(0);
+        assertTrue(result.isGranted(TestPermissions.CAMERA));
+        assertFalse(result.isGranted(TestPermissions.READ_SMS));
+        assertFalse(result.isPermanentlyDenied(TestPermissions.READ_SMS));
+        assertTrue(result.isPermanentlyDenied(TestPermissions.READ_CONTACTS));
+        assertTrue(result.isAnyPermissionGranted());
+        assertFalse(result.areAllPermissionsGranted());
+        assertEquals(2, platform.getPromptCount());
+        assertEquals(1, platform.getSettingsDialogCount());
+    }
+
+    @Test
+    public void multiplePermissionsDenied() {
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.READ_SMS, TestPermissions.RECEIVE_SMS);
+
+        assertEquals(1, callback.deniedCount);
+        assertEquals(1, platform.getRequestCount());
+        assertEquals(0, platform.getSettingsDialogCount());
+    }
+
+    @Test
+    public void rationaleCancelledDeniesWithoutRequest() {
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_CANCEL);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        ResultRecorder callback = new ResultRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA, TestPermissions.READ_SMS);
+
+        assertEquals(1, callback.results.size());
+        assertFalse(callback.results.get(0).isAnyPermissionGranted());
+        assertFalse(callback.results.get(0).isAnyPermissionPermanentlyDenied());
+        assertEquals(1, platform.getDialogCount());
+        assertEquals(0, platform.getRequestCount());
+    }
+
+    @Test
+    public void rationaleDeclinedStartsCooldown() {
+        flow.setPermissionRequestPolicy(new PermissionRequestPolicy(60000, 60000, PermissionRequestPolicy.NO_BUDGET));
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_CANCEL);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, new GrantRecorder(), TestPermissions.CAMERA);
+        flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.deniedCount);
+        assertEquals(1, platform.getDialogCount());
+        assertEquals(0, platform.getRequestCount());
+    }
+
+    @Test
+    public void rationaleDismissedWithHostDoesNotStartCooldown() {
+        flow.setPermissionRequestPolicy(new PermissionRequestPolicy(60000, 60000, PermissionRequestPolicy.NO_BUDGET));
+        platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_NO_ANSWER);
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        ScriptedPermissionPlatform.Host newHost = new ScriptedPermissionPlatform.Host(host.key);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, MESSAGE, new GrantRecorder(), TestPermissions.CAMERA);
+        flow.onHostDestroyed(host, false);
+        flow.onHostResumed(newHost);
+        flow.checkPermission(newHost, null, MESSAGE, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.grantedCount);
+        assertEquals(2, platform.getDialogCount());
+        assertEquals(1, platform.getRequestCount());
+    }
+
+    @Test
+    public void noMessageSkipsRationale() {
+        platform.setRequestAnswer(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY);
+        GrantRecorder callback = new GrantRecorder();
+
+        flow.checkPermission(host, null, null, callback, TestPermissions.CAMERA);
+
+        assertEquals(1, callback.deniedCount);
+        assertEquals(0, platform.getDialogCount());
+        assertEquals(1, platform.getRequestCount());
+    }
+
+    @Test
+    public void callbackFromOtherThreadPostedToMainThread() throws InterruptedException {
+        platform.setPermissionState(TestPermissions.CAMERA, ScriptedPermissionPlatform.ANSWER_GRANT);
+        final GrantRecorder callback = new GrantRecorder();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flow.checkPermission(host, null, MESSAGE, callback, TestPermissions.CAMERA);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(0, callback.getCallbackCount());
+
+        scheduler.runPending();
+        assertEquals(1, callback.grantedCount);
+    }
+
+    /**
+     * Recording the grant callbacks
+     */
+    static class GrantRecorder implements PermissionFlow.GrantCallback {
+
+        int grantedCount = 0;
+        int deniedCount = 0;
+
+        @Override
+        public void permissionGranted() {
+            grantedCount++;
+        }
+
+        @Override
+        public void permissionDenied() {
+            deniedCount++;
+        }
+
+        int getCallbackCount() {
+            return grantedCount + deniedCount;
+        }
+    }
+
+    /**
+     * Recording the result callbacks
+     */
+    static class ResultRecorder implements PermissionFlow.ResultCallback {
+
+        final List<PermissionResult> results = new ArrayList<>();
+
+        @Override
+        public void onPermissionResult(PermissionResult result) {
+            results.add(result);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.cashdivider.permissions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionPolicyTableTest {
+
+    private static final String[] CAMERA = {TestPermissions.CAMERA};
+    private static final String[] UNDECLARED = {"test.permission.UNDECLARED"};
+
+    private PermissionPolicyTable table;
+
+    @Before
+    public void setUp() {
+        TestPermissions.register();
+        table = new PermissionPolicyTable();
+    }
+
+    @Test
+    public void cooldownDoublesOnEachDenial() {
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(1000, 10000, PermissionRequestPolicy.NO_BUDGET);
+        assertTrue(table.isAllowed(policy, CAMERA, 0, 0));
+
+        table.recordDenied(TestPermissions.CAMERA, 0);
+        assertFalse(table.isAllowed(policy, CAMERA, 0, 999));
+        assertTrue(table.isAllowed(policy, CAMERA, 0, 1000));
+
+        table.recordDenied(TestPermissions.CAMERA, 1000);
+        assertFalse(table.isAllowed(policy, CAMERA, 0, 2999));
+        assertTrue(table.isAllowed(policy, CAMERA, 0, 3000));
+    }
+
+    @Test
+    public void cooldownIsCapped() {
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(1000, 3000, PermissionRequestPolicy.NO_BUDGET);
+        for (int i = 0; i < 40; i++) {
+            table.recordDenied(TestPermissions.CAMERA, 0);
+        }
+
+        assertFalse(table.isAllowed(policy, CAMERA, 0, 2999));
+        assertTrue(table.isAllowed(policy, CAMERA, 0, 3000));
+    }
+
+    @Test
+    public void grantForgetsDenials() {
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(1000, 10000, PermissionRequestPolicy.NO_BUDGET);
+        table.recordDenied(TestPermissions.CAMERA, 0);
+        table.recordGranted(TestPermissions.CAMERA);
+
+        assertTrue(table.isAllowed(policy, CAMERA, 0, 0));
+    }
+
+    @Test
+    public void grantedPermissionIsNotLimited() {
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(1000, 10000, PermissionRequestPolicy.NO_BUDGET);
+        table.recordDenied(TestPermissions.CAMERA, 0);
+
+        assertTrue(table.isAllowed(policy, CAMERA, TestPermissions.CAMERA_BIT, 0));
+    }
+
+    @Test
+    public void undeclaredPermissionIsNeverLimited() {
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(1000, 10000, PermissionRequestPolicy.NO_BUDGET);
+        table.recordDenied(UNDECLARED[0], 0);
+
+        assertTrue(table.isAllowed(policy, UNDECLARED, 0, 0));
+    }
+
+    @Test
+    public void budgetIsResetWithSession() {
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(0, 0, 2);
+        table.recordPrompt();
+        assertTrue(table.isAllowed(policy, UNDECLARED, 0, 0));
+
+        table.recordPrompt();
+        assertFalse(table.isAllowed(policy, UNDECLARED, 0, 0));
+
+        table.resetSession();
+        assertTrue(table.isAllowed(policy, UNDECLARED, 0, 0));
+    }
+
+    @Test
+    public void tableCreatedBeforeRegistrationLimitsDeclaredPermissions() {
+        PermissionIndex.register(new String[0], new String[0], new int[0]);
+        PermissionPolicyTable earlyTable = new PermissionPolicyTable();
+        TestPermissions.register();
+
+        PermissionRequestPolicy policy = new PermissionRequestPolicy(1000, 10000, PermissionRequestPolicy.NO_BUDGET);
+        earlyTable.recordDenied(TestPermissions.CAMERA, 0);
+
+        assertFalse(earlyTable.isAllowed(policy, CAMERA, 0, 999));
+        assertTrue(earlyTable.isAllowed(policy, CAMERA, 0, 1000));
+    }
+}
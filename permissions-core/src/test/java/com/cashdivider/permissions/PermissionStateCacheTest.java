@@ -0,0 +1,122 @@
+package com.cashdivider.permissions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionStateCacheTest {
+
+    private PermissionStateCache cache;
+
+    @Before
+    public void setUp() {
+        TestPermissions.register();
+        cache = new PermissionStateCache();
+    }
+
+    @Test
+    public void getCountsHitsAndMisses() {
+        assertNull(cache.get(TestPermissions.CAMERA));
+        cache.put(TestPermissions.CAMERA, true);
+        assertTrue(cache.get(TestPermissions.CAMERA));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void areAllGrantedCountsOneHitPerPermission() {
+        cache.put(TestPermissions.CAMERA, true);
+        cache.put(TestPermissions.READ_SMS, true);
+        cache.put(TestPermissions.READ_CONTACTS, false);
+
+        assertTrue(cache.areAllGranted(TestPermissions.CAMERA_BIT | TestPermissions.READ_SMS_BIT));
+        assertEquals(2, cache.getHitCount());
+
+        assertFalse(cache.areAllGranted(TestPermissions.CAMERA_BIT | TestPermissions.READ_CONTACTS_BIT));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void putUpdatesGrantedMask() {
+        cache.put(TestPermissions.RECEIVE_SMS, true);
+        assertEquals(TestPermissions.RECEIVE_SMS_BIT, cache.getGrantedMask());
+
+        cache.put(TestPermissions.RECEIVE_SMS, false);
+        assertEquals(0, cache.getGrantedMask());
+        assertFalse(cache.get(TestPermissions.RECEIVE_SMS));
+    }
+
+    @Test
+    public void undeclaredPermissionIsCachedWithoutMask() {
+        cache.put("test.permission.UNDECLARED", true);
+
+        assertTrue(cache.get("test.permission.UNDECLARED"));
+        assertEquals(0, cache.getGrantedMask());
+    }
+
+    @Test
+    public void putIfAbsentKeepsNewerState() {
+        cache.put(TestPermissions.CAMERA, false);
+        cache.putIfAbsent(TestPermissions.CAMERA, true);
+        cache.putIfAbsent(TestPermissions.READ_SMS, true);
+
+        assertFalse(cache.get(TestPermissions.CAMERA));
+        assertTrue(cache.get(TestPermissions.READ_SMS));
+        assertEquals(TestPermissions.READ_SMS_BIT, cache.getGrantedMask());
+    }
+
+    @Test
+    public void invalidateDropsAllStates() {
+        cache.put(TestPermissions.CAMERA, true);
+        cache.invalidate();
+
+        assertNull(cache.get(TestPermissions.CAMERA));
+        assertFalse(cache.areAllGranted(TestPermissions.CAMERA_BIT));
+        assertEquals(0, cache.getGrantedMask());
+    }
+
+    @Test
+    public void invalidateRacingPutsKeepsMaskInSyncWithStates() throws InterruptedException {
+        for (int round = 0; round < 2000; round++) {
+            final PermissionStateCache raced = new PermissionStateCache();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    raced.put(TestPermissions.CAMERA, true);
+                    raced.putIfAbsent(TestPermissions.READ_SMS, true);
+                }
+            });
+            writer.start();
+            start.countDown();
+            raced.invalidate();
+            writer.join();
+
+            // Every granted bit left in the mask has its state cached as granted
+            long mask = raced.getGrantedMask();
+            assertEquals((mask & TestPermissions.CAMERA_BIT) != 0, Boolean.TRUE.equals(raced.get(TestPermissions.CAMERA)));
+            assertEquals((mask & TestPermissions.READ_SMS_BIT) != 0, Boolean.TRUE.equals(raced.get(TestPermissions.READ_SMS)));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package com.cashdivider.permissions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * In-memory platform answering the requests and dialogs from a script, without any system UI
+ *
+ *  Requests and dialogs are answered synchronously, unless held (DIALOG_NO_ANSWER, setHoldRequests). Unscripted system requests are denied,
+ *  unscripted dialogs are continued - or answered randomly from a seed (setRandomAnswers), the same seed
+ *  giving the same answers. As the Android presenters, a host has one dialog per kind (rationale, settings) - a pending
+ *  dialog is replaced and cancelled by the next one of its kind only. Every call is recorded for the assertions.
+ *  Hosts are ScriptedPermissionPlatform.Host
+ *
+ *  platform.setRequestAnswer(TestPermissions.READ_SMS, ScriptedPermissionPlatform.ANSWER_PERMANENTLY_DENY);
+ *  platform.addDialogAnswer(ScriptedPermissionPlatform.DIALOG_CANCEL);
+ *  PermissionFlow flow = new PermissionFlow(platform, scheduler);
+ */
+class ScriptedPermissionPlatform implements PermissionPlatform {
+
+    static final int ANSWER_GRANT = 0;
+    static final int ANSWER_DENY = 1;
+    static final int ANSWER_PERMANENTLY_DENY = 2;
+
+    static final int DIALOG_CONTINUE = 0;
+    static final int DIALOG_CANCEL = 1; // Negative button
+    static final int DIALOG_NO_ANSWER = 2; // Kept pending until answerPendingDialog
+
+    private final Set<String> grantedPermissions = new HashSet<>();
+    private final Set<String> deniedPermissions = new HashSet<>(); // Denied once, rationale can be shown
+    private final Set<String> permanentlyDeniedPermissions = new HashSet<>();
+    private final Map<String, Integer> requestAnswers = new HashMap<>();
+    private final ArrayDeque<Integer> dialogAnswers = new ArrayDeque<>();
+    private final List<PendingDialog> pendingDialogs = new ArrayList<>();
+    private final List<PendingRequest> pendingRequests = new ArrayList<>();
+    private final List<String[]> requests = new ArrayList<>();
+
+    private Random random = null;
+    private int requestOngoingErrors = 0;
+    private boolean systemRationale = false;
+    private boolean holdRequests = false;
+    private int dialogCount = 0;
+    private int settingsDialogCount = 0;
+    private int snackbarCount = 0;
+    private int settingsCount = 0;
+    private int promptCount = 0;
+    private int redundantPromptCount = 0;
+    private int duplicatePromptCount = 0;
+    private int stateReadCount = 0;
+    private Object lastSnackbarRootView = null;
+    private Object lastSnackbarRequest = null;
+
+    /*
+        Script
+     */
+
+    /**
+     * Setting the current system state of the permission
+     *
+     * @param permission
+     * @param answer - ANSWER_GRANT, ANSWER_DENY or ANSWER_PERMANENTLY_DENY
+     */
+    synchronized void setPermissionState(String permission, int answer) {
+        applyAnswer(permission, answer);
+    }
+
+    /**
+     * Setting the answer of the system dialog for the permission, kept for all the next requests
+     *
+     * @param permission
+     * @param answer - ANSWER_GRANT, ANSWER_DENY or ANSWER_PERMANENTLY_DENY
+     */
+    synchronized void setRequestAnswer(String permission, int answer) {
+        requestAnswers.put(permission, answer);
+    }
+
+    /**
+     * Queuing the answer of the next dialog
+     *
+     * @param answer - DIALOG_CONTINUE, DIALOG_CANCEL or DIALOG_NO_ANSWER
+     */
+    synchronized void addDialogAnswer(int answer) {
+        dialogAnswers.add(answer);
+    }
+
+    /**
+     * Answering the unscripted requests and dialogs randomly
+     *
+     * @param seed - same seed, same answers
+     */
+    synchronized void setRandomAnswers(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Failing the next requests as if the system was busy with a previous request
+     *
+     * @param count
+     */
+    synchronized void setRequestOngoingErrors(int count) {
+        requestOngoingErrors = count;
+    }
+
+    /**
+     * Asking for a rationale before the system dialog when a permission was denied before
+     *
+     * @param enabled
+     */
+    synchronized void setSystemRationale(boolean enabled) {
+        systemRationale = enabled;
+    }
+
+    /**
+     * Keeping the system dialogs open until answerPendingRequest, as a user taking time to answer
+     *
+     * @param hold
+     */
+    synchronized void setHoldRequests(boolean hold) {
+        holdRequests = hold;
+    }
+
+    /**
+     * Answering the oldest dialog scripted with DIALOG_NO_ANSWER
+     *
+     * @param positive - false for the negative button
+     * @return false if no dialog is pending
+     */
+    boolean answerPendingDialog(boolean positive) {
+        DialogCallback dialogCallback;
+        synchronized (this) {
+            if (pendingDialogs.isEmpty()) {
+                return false;
+            }
+            dialogCallback = pendingDialogs.remove(0).dialogCallback;
+        }
+        if (positive) {
+            dialogCallback.onContinue();
+        } else {
+            dialogCallback.onCancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * Answering the oldest system dialog held by setHoldRequests, with the scripted answers
+     *
+     * @return false if no system dialog is open
+     */
+    boolean answerPendingRequest() {
+        PendingRequest pendingRequest;
+        synchronized (this) {
+            if (pendingRequests.isEmpty()) {
+                return false;
+            }
+            pendingRequest = pendingRequests.remove(0);
+        }
+        answerRequest(pendingRequest.permissions, pendingRequest.requestListener);
+        return true;
+    }
+
+    /**
+     * Clicking the settings button of the last snack-bar
+     *
+     * @param flow - flow that showed it
+     * @return false if no snack-bar was shown
+     */
+    boolean clickSnackbarAction(PermissionFlow flow) {
+        Object rootView;
+        Object request;
+        synchronized (this) {
+            rootView = lastSnackbarRootView;
+            request = lastSnackbarRequest;
+        }
+        if (rootView == null) {
+            return false;
+        }
+        flow.onSettingsAction(rootView, request);
+        return true;
+    }
+
+    /*
+        Recorded calls
+     */
+
+    synchronized int getRequestCount() {
+        return requests.size();
+    }
+
+    /**
+     * Getting the permissions of each system request, in order
+     *
+     * @return
+     */
+    synchronized List<String[]> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    /**
+     * Number of dialogs shown - rationale and settings dialogs
+     *
+     * @return
+     */
+    synchronized int getDialogCount() {
+        return dialogCount;
+    }
+
+    synchronized int getSettingsDialogCount() {
+        return settingsDialogCount;
+    }
+
+    synchronized int getPendingDialogCount() {
+        return pendingDialogs.size();
+    }
+
+    synchronized int getSnackbarCount() {
+        return snackbarCount;
+    }
+
+    synchronized int getSettingsCount() {
+        return settingsCount;
+    }
+
+    /**
+     * Number of system dialogs shown - one per requested permission not granted or permanently denied
+     *
+     * @return
+     */
+    synchronized int getPromptCount() {
+        return promptCount;
+    }
+
+    /**
+     * Number of permissions sent to the system while already granted or permanently denied
+     * (no dialog but a wasted request)
+     *
+     * @return
+     */
+    synchronized int getRedundantPromptCount() {
+        return redundantPromptCount;
+    }
+
+    /**
+     * Number of system requests sent while another open system dialog was asking for one of their permissions
+     *
+     * @return
+     */
+    synchronized int getDuplicatePromptCount() {
+        return duplicatePromptCount;
+    }
+
+    synchronized int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Number of grant states read without request
+     *
+     * @return
+     */
+    synchronized int getStateReadCount() {
+        return stateReadCount;
+    }
+
+    /*
+        Platform
+     */
+
+    @Override
+    public boolean hasRuntimePermissions() {
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isPermissionGranted(Object context, String permission) {
+        stateReadCount++;
+        return grantedPermissions.contains(permission);
+    }
+
+    @Override
+    public Set<String> getGrantedPermissions(Object context, String[] permissions) {
+        return new HashSet<>(getGranted(permissions));
+    }
+
+    @Override
+    public String getHostKey(Object host) {
+        return ((Host) host).key;
+    }
+
+    @Override
+    public Object getRootView(Object host) {
+        return ((Host) host).rootView;
+    }
+
+    @Override
+    public synchronized boolean shouldShowRequestPermissionRationale(Object host, String permission) {
+        return deniedPermissions.contains(permission) && !permanentlyDeniedPermissions.contains(permission);
+    }
+
+    @Override
+    public void requestPermission(Object host, String permission, RequestListener requestListener) {
+        requestPermissions(host, new String[]{permission}, requestListener);
+    }
+
+    @Override
+    public void requestPermissions(final Object host, final String[] permissions, final RequestListener requestListener) {
+        boolean requestOngoing;
+        boolean showRationale = false;
+        synchronized (this) {
+            requests.add(permissions.clone());
+            for (PendingRequest pendingRequest : pendingRequests) {
+                if (pendingRequest.overlaps(permissions)) {
+                    duplicatePromptCount++;
+                    break;
+                }
+            }
+            requestOngoing = requestOngoingErrors > 0;
+            if (requestOngoing) {
+                requestOngoingErrors--;
+            } else if (systemRationale) {
+                for (String permission : permissions) {
+                    showRationale |= shouldShowRequestPermissionRationale(host, permission);
+                }
+            }
+        }
+        if (requestOngoing) {
+            requestListener.onError(true);
+            return;
+        }
+        if (!showRationale) {
+            holdOrAnswerRequest(permissions, requestListener);
+            return;
+        }
+        requestListener.onPermissionRationaleShouldBeShown(new RationaleToken() {
+            @Override
+            public void continuePermissionRequest() {
+                holdOrAnswerRequest(permissions, requestListener);
+            }
+
+            @Override
+            public void cancelPermissionRequest() {
+                Set<String> denied = new HashSet<>();
+                Set<String> permanentlyDenied = new HashSet<>();
+                synchronized (ScriptedPermissionPlatform.this) {
+                    for (String permission : permissions) {
+                        if (!grantedPermissions.contains(permission)) {
+                            denied.add(permission);
+                        }
+                        if (permanentlyDeniedPermissions.contains(permission)) {
+                            permanentlyDenied.add(permission);
+                        }
+                    }
+                }
+                requestListener.onPermissionsChecked(getGranted(permissions), denied, permanentlyDenied);
+            }
+        });
+    }
+
+    @Override
+    public void showRationaleDialog(Object host, String message, DialogCallback dialogCallback) {
+        showDialog(host, false, dialogCallback);
+    }
+
+    @Override
+    public void showSettingsDialog(Object host, String message, DialogCallback dialogCallback) {
+        synchronized (this) {
+            settingsDialogCount++;
+        }
+        showDialog(host, true, dialogCallback);
+    }
+
+    private void showDialog(Object host, boolean settings, DialogCallback dialogCallback) {
+        int answer;
+        DialogCallback replacedDialogCallback = null;
+        synchronized (this) {
+            dialogCount++;
+            Iterator<PendingDialog> iterator = pendingDialogs.iterator();
+            while (iterator.hasNext()) {
+                PendingDialog pendingDialog = iterator.next();
+                if (pendingDialog.host == host && pendingDialog.settings == settings) {
+                    replacedDialogCallback = pendingDialog.dialogCallback;
+                    iterator.remove();
+                }
+            }
+            Integer scriptedAnswer = dialogAnswers.poll();
+            if (scriptedAnswer != null) {
+                answer = scriptedAnswer;
+            } else {
+                answer = random != null && random.nextBoolean() ? DIALOG_CANCEL : DIALOG_CONTINUE;
+            }
+            if (answer == DIALOG_NO_ANSWER) {
+                pendingDialogs.add(new PendingDialog(host, settings, dialogCallback));
+            }
+        }
+        if (replacedDialogCallback != null) {
+            replacedDialogCallback.onCancel(false);
+        }
+        if (answer == DIALOG_NO_ANSWER) {
+            return;
+        }
+        if (answer == DIALOG_CONTINUE) {
+            dialogCallback.onContinue();
+        } else {
+            dialogCallback.onCancel(true);
+        }
+    }
+
+    @Override
+    public void releaseDialog(Object host, boolean cancelPending) {
+        List<DialogCallback> dialogCallbacks = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PendingDialog> iterator = pendingDialogs.iterator();
+            while (iterator.hasNext()) {
+                PendingDialog pendingDialog = iterator.next();
+                if (pendingDialog.host == host) {
+                    dialogCallbacks.add(pendingDialog.dialogCallback);
+                    iterator.remove();
+                }
+            }
+        }
+        if (!cancelPending) {
+            return;
+        }
+        for (DialogCallback dialogCallback : dialogCallbacks) {
+            // Dismissed with the host, not declined
+            dialogCallback.onCancel(false);
+        }
+    }
+
+    @Override
+    public synchronized void showSettingsSnackbar(Object rootView, String message, Object request) {
+        snackbarCount++;
+        lastSnackbarRootView = rootView;
+        lastSnackbarRequest = request;
+    }
+
+    @Override
+    public synchronized void openSettings(Object context) {
+        settingsCount++;
+    }
+
+    private void holdOrAnswerRequest(String[] permissions, RequestListener requestListener) {
+        synchronized (this) {
+            if (holdRequests) {
+                pendingRequests.add(new PendingRequest(permissions, requestListener));
+                return;
+            }
+        }
+        answerRequest(permissions, requestListener);
+    }
+
+    private void answerRequest(String[] permissions, RequestListener requestListener) {
+        Set<String> denied = new HashSet<>();
+        Set<String> permanentlyDenied = new HashSet<>();
+        synchronized (this) {
+            for (String permission : permissions) {
+                if (grantedPermissions.contains(permission)) {
+                    redundantPromptCount++;
+                    continue;
+                }
+                if (permanentlyDeniedPermissions.contains(permission)) {
+                    redundantPromptCount++;
+                } else {
+                    // System dialog shown
+                    promptCount++;
+                    Integer answer = requestAnswers.get(permission);
+                    if (answer == null) {
+                        answer = random != null ? random.nextInt(ANSWER_PERMANENTLY_DENY + 1) : ANSWER_DENY;
+                    }
+                    applyAnswer(permission, answer);
+                }
+                if (!grantedPermissions.contains(permission)) {
+                    denied.add(permission);
+                }
+                if (permanentlyDeniedPermissions.contains(permission)) {
+                    permanentlyDenied.add(permission);
+                }
+            }
+        }
+        requestListener.onPermissionsChecked(getGranted(permissions), denied, permanentlyDenied);
+    }
+
+    private synchronized Set<String> getGranted(String[] permissions) {
+        Set<String> granted = new HashSet<>();
+        for (String permission : permissions) {
+            if (grantedPermissions.contains(permission)) {
+                granted.add(permission);
+            }
+        }
+        return granted.isEmpty() ? Collections.<String>emptySet() : granted;
+    }
+
+    private void applyAnswer(String permission, int answer) {
+        grantedPermissions.remove(permission);
+        deniedPermissions.remove(permission);
+        permanentlyDeniedPermissions.remove(permission);
+        if (answer == ANSWER_GRANT) {
+            grantedPermissions.add(permission);
+        } else if (answer == ANSWER_PERMANENTLY_DENY) {
+            deniedPermissions.add(permission);
+            permanentlyDeniedPermissions.add(permission);
+        } else {
+            deniedPermissions.add(permission);
+        }
+    }
+
+    private static class PendingDialog {
+
+        final Object host;
+        final boolean settings;
+        final DialogCallback dialogCallback;
+
+        PendingDialog(Object host, boolean settings, DialogCallback dialogCallback) {
+            this.host = host;
+            this.settings = settings;
+            this.dialogCallback = dialogCallback;
+        }
+    }
+
+    private class PendingRequest {
+
+        final String[] permissions;
+        final RequestListener requestListener;
+
+        PendingRequest(String[] permissions, RequestListener requestListener) {
+            this.permissions = permissions.clone();
+            this.requestListener = requestListener;
+        }
+
+        /**
+         * Checking if the system dialog asks for any of the permissions - not granted or permanently denied ones
+         *
+         * @param otherPermissions
+         * @return
+         */
+        boolean overlaps(String[] otherPermissions) {
+            for (String permission : otherPermissions) {
+                if (grantedPermissions.contains(permission) || permanentlyDeniedPermissions.contains(permission)) {
+                    continue;
+                }
+                for (String pendingPermission : permissions) {
+                    if (pendingPermission.equals(permission)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Host of the tests - instances with the same key are the same host recreated
+     */
+    static class Host {
+
+        final String key;
+        final Object rootView;
+
+        Host(String key) {
+            this(key, null);
+        }
+
+        Host(String key, Object rootView) {
+            this.key = key;
+            this.rootView = rootView;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.cashdivider.permissions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Main thread of the tests - the thread creating the scheduler
+ *
+ *  Posted runnables (delayed, frame and idle ones included) are kept in order and run by runPending,
+ *  delays are not waited for
+ */
+class TestPermissionScheduler implements PermissionScheduler {
+
+    private static final int MAX_RUNS = 100000; // Runnables posting themselves forever
+
+    private final Thread mainThread = Thread.currentThread();
+    private final List<Runnable> pending = new ArrayList<>();
+
+    @Override
+    public boolean isMainThread() {
+        return Thread.currentThread() == mainThread;
+    }
+
+    @Override
+    public synchronized void post(Runnable runnable) {
+        pending.add(runnable);
+    }
+
+    @Override
+    public synchronized void postDelayed(Runnable runnable, long delayMs) {
+        pending.add(runnable);
+    }
+
+    @Override
+    public synchronized void postFrame(Runnable runnable) {
+        pending.add(runnable);
+    }
+
+    @Override
+    public synchronized void postIdle(Runnable runnable) {
+        pending.add(runnable);
+    }
+
+    @Override
+    public synchronized void remove(Runnable runnable) {
+        while (pending.remove(runnable)) {
+            // All the posts of the runnable
+        }
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Running the posted runnables, and the ones they post, until none is left
+     *
+     * @return number of runnables run
+     */
+    int runPending() {
+        int runs = 0;
+        while (true) {
+            Runnable runnable;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return runs;
+                }
+                runnable = pending.remove(0);
+            }
+            if (++runs > MAX_RUNS) {
+                throw new IllegalStateException("Runnables still posted after " + MAX_RUNS + " runs");
+            }
+            runnable.run();
+        }
+    }
+}
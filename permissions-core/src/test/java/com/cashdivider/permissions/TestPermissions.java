@@ -0,0 +1,33 @@
+package com.cashdivider.permissions;
+
+/**
+ * Declared permissions of the tests - registered as the generated PermissionTable would
+ */
+final class TestPermissions {
+
+    static final String CAMERA = "android.permission.CAMERA";
+    static final String READ_SMS = "android.permission.READ_SMS";
+    static final String RECEIVE_SMS = "android.permission.RECEIVE_SMS";
+    static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+    static final String INTERNET = "android.permission.INTERNET";
+
+    static final long CAMERA_BIT = 1L;
+    static final long READ_SMS_BIT = 1L << 1;
+    static final long RECEIVE_SMS_BIT = 1L << 2;
+    static final long READ_CONTACTS_BIT = 1L << 3;
+    static final long INTERNET_BIT = 1L << 4;
+
+    private static final String[] PERMISSIONS = {CAMERA, READ_SMS, RECEIVE_SMS, READ_CONTACTS, INTERNET};
+    private static final String[] GROUPS = {"android.permission-group.CAMERA", "android.permission-group.SMS", "android.permission-group.CONTACTS"};
+    private static final int[] PERMISSION_GROUPS = {0, 1, 1, 2, -1};
+
+    private TestPermissions() {
+    }
+
+    /**
+     * Registering the test permissions - same table for all the tests, any number of calls
+     */
+    static void register() {
+        PermissionIndex.register(PERMISSIONS, GROUPS, PERMISSION_GROUPS);
+    }
+}
@@ -0,0 +1,7 @@
+# Rules applied to the applications using the library - also cover permissions-core, a plain jar without rules of its own
+
+# Generated in the application, loaded by name by PermissionIndex (permissions-core) - registers itself from its static initializer
+-keep class com.cashdivider.permissions.PermissionTable
+
+# Nothing else is kept: the tracers and metrics sinks not referenced by the application
+# (ChromeTracePermissionTracer, PermissionMetricsHistogram - both in permissions-core) are removed when minified
@@ -0,0 +1,139 @@
+package com.cashdivider.permissions;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.view.ViewGroup;
+
+import java.util.Set;
+
+/**
+ * PermissionFlow platform of the Android library - the hosts are activities, the contexts Context
+ * and the root views ViewGroup. System requests, dialogs and snack-bars go through the PermissionEngine
+ */
+class AndroidPermissionPlatform implements PermissionPlatform {
+
+    private volatile PermissionEngine permissionEngine = new DexterPermissionEngine();
+    private final SettingsSnackbarCache settingsSnackbarCache = new SettingsSnackbarCache(); // Main thread only
+
+    void setPermissionEngine(PermissionEngine engine) {
+        permissionEngine = engine;
+    }
+
+    /**
+     * Detecting if is Lollipop and UP
+     * @return
+     */
+    @Override
+    public boolean hasRuntimePermissions() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    @Override
+    public boolean isPermissionGranted(Object context, String permission) {
+        return permissionEngine.isPermissionGranted((Context) context, permission);
+    }
+
+    @Override
+    public Set<String> getGrantedPermissions(Object context, String[] permissions) {
+        return permissionEngine.getGrantedPermissions((Context) context, permissions);
+    }
+
+    @Override
+    public String getHostKey(Object host) {
+        Activity activity = (Activity) host;
+        return activity.getClass().getName() + "#" + activity.getTaskId();
+    }
+
+    @Override
+    public Object getRootView(Object host) {
+        return ((Activity) host).findViewById(android.R.id.content);
+    }
+
+    @Override
+    public boolean shouldShowRequestPermissionRationale(Object host, String permission) {
+        return permissionEngine.shouldShowRequestPermissionRationale((Activity) host, permission);
+    }
+
+    @Override
+    public void requestPermission(Object host, String permission, RequestListener requestListener) {
+        permissionEngine.requestPermission((Activity) host, permission, new EngineRequestListener(requestListener));
+    }
+
+    @Override
+    public void requestPermissions(Object host, String[] permissions, RequestListener requestListener) {
+        permissionEngine.requestPermissions((Activity) host, permissions, new EngineRequestListener(requestListener));
+    }
+
+    @Override
+    public void showRationaleDialog(Object host, String message, DialogCallback dialogCallback) {
+        Context context = (Context) host;
+        permissionEngine.showDialog(context, PermissionEngine.DIALOG_RATIONALE, message, context.getString(R.string.textContinue), context.getString(R.string.textNotNow), new EngineDialogCallback(dialogCallback));
+    }
+
+    @Override
+    public void showSettingsDialog(Object host, String message, DialogCallback dialogCallback) {
+        Context context = (Context) host;
+        permissionEngine.showDialog(context, PermissionEngine.DIALOG_SETTINGS, message, context.getString(R.string.textPermissionRationaleButton), null, new EngineDialogCallback(dialogCallback));
+    }
+
+    @Override
+    public void releaseDialog(Object host, boolean cancelPending) {
+        permissionEngine.releaseDialog((Activity) host, cancelPending);
+    }
+
+    @Override
+    public void showSettingsSnackbar(Object rootView, String message, Object request) {
+        // Reusing the button text and click listener of the rootView/message
+        SettingsSnackbarCache.Entry entry = settingsSnackbarCache.get((ViewGroup) rootView, message, request);
+        permissionEngine.showSnackbar((ViewGroup) rootView, message, entry.actionText, entry);
+    }
+
+    @Override
+    public void openSettings(Object context) {
+        permissionEngine.openSettings((Context) context);
+    }
+
+    private static class EngineRequestListener implements PermissionEngine.RequestListener {
+
+        private final RequestListener requestListener;
+
+        EngineRequestListener(RequestListener requestListener) {
+            this.requestListener = requestListener;
+        }
+
+        @Override
+        public void onPermissionsChecked(Set<String> grantedPermissions, Set<String> deniedPermissions, Set<String> permanentlyDeniedPermissions) {
+            requestListener.onPermissionsChecked(grantedPermissions, deniedPermissions, permanentlyDeniedPermissions);
+        }
+
+        @Override
+        public void onPermissionRationaleShouldBeShown(PermissionEngine.RationaleToken rationaleToken) {
+            requestListener.onPermissionRationaleShouldBeShown(rationaleToken);
+        }
+
+        @Override
+        public void onError(boolean requestOngoing) {
+            requestListener.onError(requestOngoing);
+        }
+    }
+
+    private static class EngineDialogCallback implements PermissionEngine.DialogCallback {
+
+        private final DialogCallback dialogCallback;
+
+        EngineDialogCallback(DialogCallback dialogCallback) {
+            this.dialogCallback = dialogCallback;
+        }
+
+        @Override
+        public void onContinue() {
+            dialogCallback.onContinue();
+        }
+
+        @Override
+        public void onCancel(boolean userCancelled) {
+            dialogCallback.onCancel(userCancelled);
+        }
+    }
+}
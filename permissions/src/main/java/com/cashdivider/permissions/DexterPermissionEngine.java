@@ -0,0 +1,204 @@
+package com.cashdivider.permissions;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.provider.Settings;
+import android.support.design.widget.Snackbar;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.karumi.dexter.Dexter;
+import com.karumi.dexter.MultiplePermissionsReport;
+import com.karumi.dexter.PermissionToken;
+import com.karumi.dexter.listener.DexterError;
+import com.karumi.dexter.listener.PermissionDeniedResponse;
+import com.karumi.dexter.listener.PermissionGrantedResponse;
+import com.karumi.dexter.listener.PermissionRequest;
+import com.karumi.dexter.listener.PermissionRequestErrorListener;
+import com.karumi.dexter.listener.multi.MultiplePermissionsListener;
+import com.karumi.dexter.listener.single.PermissionListener;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Default engine - Dexter for the system requests, MaterialDialog for the dialogs
+ */
+public class DexterPermissionEngine implements PermissionEngine {
+
+    @Override
+    public boolean isPermissionGranted(Context context, String permission) {
+        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * One package manager call for all the permissions, instead of one per permission
+     */
+    @Override
+    public Set<String> getGrantedPermissions(Context context, String[] permissions) {
+        Set<String> grantedPermissions = new HashSet<>();
+        PackageInfo packageInfo;
+        try {
+            packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+        } catch (PackageManager.NameNotFoundException e) {
+            packageInfo = null;
+        }
+        if (packageInfo == null || packageInfo.requestedPermissions == null || packageInfo.requestedPermissionsFlags == null) {
+            for (String permission : permissions) {
+                if (isPermissionGranted(context, permission)) {
+                    grantedPermissions.add(permission);
+                }
+            }
+            return grantedPermissions;
+        }
+
+        Set<String> requestedPermissions = new HashSet<>(Arrays.asList(permissions));
+        for (int i = 0; i < packageInfo.requestedPermissions.length; i++) {
+            if ((packageInfo.requestedPermissionsFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0
+                    && requestedPermissions.contains(packageInfo.requestedPermissions[i])) {
+                grantedPermissions.add(packageInfo.requestedPermissions[i]);
+            }
+        }
+        return grantedPermissions;
+    }
+
+    @Override
+    public boolean shouldShowRequestPermissionRationale(Activity activity, String permission) {
+        return ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
+    }
+
+    @Override
+    public void requestPermission(Activity activity, String permission, final RequestListener requestListener) {
+        Dexter.withActivity(activity)
+                .withPermission(permission)
+                .withListener(new PermissionListener() {
+                    @Override
+                    public void onPermissionGranted(PermissionGrantedResponse response) {
+                        requestListener.onPermissionsChecked(Collections.singleton(response.getPermissionName()),
+                                Collections.<String>emptySet(), Collections.<String>emptySet());
+                    }
+
+                    @Override
+                    public void onPermissionDenied(PermissionDeniedResponse response) {
+                        requestListener.onPermissionsChecked(Collections.<String>emptySet(),
+                                Collections.singleton(response.getPermissionName()),
+                                response.isPermanentlyDenied() ? Collections.singleton(response.getPermissionName()) : Collections.<String>emptySet());
+                    }
+
+                    @Override
+                    public void onPermissionRationaleShouldBeShown(PermissionRequest permission, PermissionToken token) {
+                        requestListener.onPermissionRationaleShouldBeShown(new DexterRationaleToken(token));
+                    }
+                })
+                .withErrorListener(new DexterErrorListener(requestListener))
+                .check();
+    }
+
+    @Override
+    public void requestPermissions(Activity activity, String[] permissions, final RequestListener requestListener) {
+        Dexter.withActivity(activity)
+                .withPermissions(permissions)
+                .withListener(new MultiplePermissionsListener() {
+                    @Override
+                    public void onPermissionsChecked(MultiplePermissionsReport report) {
+                        Set<String> grantedPermissions = new HashSet<>();
+                        Set<String> deniedPermissions = new HashSet<>();
+                        Set<String> permanentlyDeniedPermissions = new HashSet<>();
+                        for (PermissionGrantedResponse response : report.getGrantedPermissionResponses()) {
+                            grantedPermissions.add(response.getPermissionName());
+                        }
+                        for (PermissionDeniedResponse response : report.getDeniedPermissionResponses()) {
+                            deniedPermissions.add(response.getPermissionName());
+                            if (response.isPermanentlyDenied()) {
+                                permanentlyDeniedPermissions.add(response.getPermissionName());
+                            }
+                        }
+                        requestListener.onPermissionsChecked(grantedPermissions, deniedPermissions, permanentlyDeniedPermissions);
+                    }
+
+                    @Override
+                    public void onPermissionRationaleShouldBeShown(List<PermissionRequest> permissions, PermissionToken token) {
+                        requestListener.onPermissionRationaleShouldBeShown(new DexterRationaleToken(token));
+                    }
+                })
+                .withErrorListener(new DexterErrorListener(requestListener))
+                .check();
+    }
+
+    @Override
+    public void showDialog(Context context, int dialogKind, String message, String positiveText, String negativeText, DialogCallback dialogCallback) {
+        // Reusing the dialog of the activity and kind
+        RationaleDialogPresenter.get(context, dialogKind).show(message, positiveText, negativeText, dialogCallback);
+    }
+
+    @Override
+    public void releaseDialog(Activity activity, boolean cancelPending) {
+        RationaleDialogPresenter.release(activity, cancelPending);
+    }
+
+    @Override
+    public void showSnackbar(ViewGroup rootView, String message, String actionText, View.OnClickListener actionListener) {
+        Snackbar.make(rootView, message, Snackbar.LENGTH_LONG)
+                .setAction(actionText, actionListener)
+                .show();
+    }
+
+    /**
+     * Starting installed application detail app settings
+     *
+     * @param context
+     */
+    @Override
+    public void openSettings(Context context) {
+        final Intent intent = new Intent();
+        intent.setAction(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
+        intent.addCategory(Intent.CATEGORY_DEFAULT);
+        intent.setData(Uri.parse("package:" + context.getPackageName()));
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NO_HISTORY);
+        intent.addFlags(Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS);
+        context.startActivity(intent);
+    }
+
+    private static class DexterRationaleToken implements RationaleToken {
+
+        private final PermissionToken token;
+
+        DexterRationaleToken(PermissionToken token) {
+            this.token = token;
+        }
+
+        @Override
+        public void continuePermissionRequest() {
+            token.continuePermissionRequest();
+        }
+
+        @Override
+        public void cancelPermissionRequest() {
+            token.cancelPermissionRequest();
+        }
+    }
+
+    private static class DexterErrorListener implements PermissionRequestErrorListener {
+
+        private final RequestListener requestListener;
+
+        DexterErrorListener(RequestListener requestListener) {
+            this.requestListener = requestListener;
+        }
+
+        @Override
+        public void onError(DexterError error) {
+            requestListener.onError(error == DexterError.REQUEST_ONGOING);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.cashdivider.permissions;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.Choreographer;
+
+/**
+ * Main thread of the application - the main Looper, Choreographer frames and idle handlers
+ */
+class HandlerPermissionScheduler implements PermissionScheduler {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public boolean isMainThread() {
+        return Looper.myLooper() == mainHandler.getLooper();
+    }
+
+    @Override
+    public void post(Runnable runnable) {
+        mainHandler.post(runnable);
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMs) {
+        mainHandler.postDelayed(runnable, delayMs);
+    }
+
+    @Override
+    public void postFrame(final Runnable runnable) {
+        // Run on UI - the frame callback must be registered from the main thread
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        runnable.run();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void postIdle(final Runnable runnable) {
+        // Run on UI - the idle handler must be added to the main queue
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        runnable.run();
+                        return false;
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void remove(Runnable runnable) {
+        mainHandler.removeCallbacks(runnable);
+    }
+}
@@ -0,0 +1,133 @@
+package com.cashdivider.permissions;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Set;
+
+/**
+ * Everything PermissionUtils needs from the system and the UI - permission states, system requests,
+ * dialogs and snack-bars. Adapted to the PermissionFlow by AndroidPermissionPlatform
+ *
+ *  DexterPermissionEngine is the default.
+ *  All the methods are called on the main thread, except isPermissionGranted and getGrantedPermissions (any thread)
+ */
+public interface PermissionEngine {
+
+    // Dialog kinds - each kind has its own dialog, a dialog only replaces one of the same kind
+    int DIALOG_RATIONALE = 0;
+    int DIALOG_SETTINGS = 1;
+
+    /**
+     * Checking the current grant state, without any request
+     *
+     * @param context
+     * @param permission
+     * @return
+     */
+    boolean isPermissionGranted(Context context, String permission);
+
+    /**
+     * Checking the current grant state of several permissions at once, without any request (any thread)
+     *
+     * @param context
+     * @param permissions
+     * @return the granted ones
+     */
+    Set<String> getGrantedPermissions(Context context, String[] permissions);
+
+    /**
+     * Checking if the permission was denied before without "Do not show again"
+     *
+     * @param activity
+     * @param permission
+     * @return
+     */
+    boolean shouldShowRequestPermissionRationale(Activity activity, String permission);
+
+    /**
+     * Requesting a single permission from the system
+     *
+     * @param activity
+     * @param permission
+     * @param requestListener
+     */
+    void requestPermission(Activity activity, String permission, RequestListener requestListener);
+
+    /**
+     * Requesting multiple permissions from the system in one request
+     *
+     * @param activity
+     * @param permissions
+     * @param requestListener
+     */
+    void requestPermissions(Activity activity, String[] permissions, RequestListener requestListener);
+
+    /**
+     * Showing a dialog with the message - positive button continues, anything else cancels
+     * (user cancelled only from the negative button)
+     *
+     * @param context
+     * @param dialogKind - DIALOG_RATIONALE or DIALOG_SETTINGS
+     * @param message
+     * @param positiveText
+     * @param negativeText - null for no negative button
+     * @param dialogCallback
+     */
+    void showDialog(Context context, int dialogKind, String message, String positiveText, String negativeText, DialogCallback dialogCallback);
+
+    /**
+     * Releasing the dialog of a destroyed activity
+     *
+     * @param activity
+     * @param cancelPending - false to drop a pending dialog without cancelling (activity recreated)
+     */
+    void releaseDialog(Activity activity, boolean cancelPending);
+
+    /**
+     * Showing a snack-bar with an action button
+     *
+     * @param rootView
+     * @param message
+     * @param actionText
+     * @param actionListener - clicks of the action button
+     */
+    void showSnackbar(ViewGroup rootView, String message, String actionText, View.OnClickListener actionListener);
+
+    /**
+     * Opening the application settings, where the user can grant the permanently denied permissions
+     *
+     * @param context
+     */
+    void openSettings(Context context);
+
+    interface RequestListener {
+
+        /**
+         * @param grantedPermissions
+         * @param deniedPermissions - Permanently denied included
+         * @param permanentlyDeniedPermissions
+         */
+        void onPermissionsChecked(Set<String> grantedPermissions, Set<String> deniedPermissions, Set<String> permanentlyDeniedPermissions);
+
+        /**
+         * The system can show a rationale before the request - the token continues or cancels it
+         *
+         * @param rationaleToken
+         */
+        void onPermissionRationaleShouldBeShown(RationaleToken rationaleToken);
+
+        /**
+         * @param requestOngoing - true if the engine is still busy with a previous request (can be retried)
+         */
+        void onError(boolean requestOngoing);
+    }
+
+    interface RationaleToken extends PermissionPlatform.RationaleToken {
+    }
+
+    interface DialogCallback extends PermissionPlatform.DialogCallback {
+    }
+}
@@ -0,0 +1,45 @@
+package com.cashdivider.permissions;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Starting the permission snapshot read at process start, before Application.onCreate
+ *
+ *  Declared in AndroidManifest.xml, not exported. Provides no data
+ */
+public class PermissionInitProvider extends ContentProvider {
+
+    @Override
+    public boolean onCreate() {
+        PermissionUtils.preloadPermissionSnapshot(getContext());
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.cashdivider.permissions;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the PermissionOutcomeStore outcomes between application starts, in SharedPreferences
+ *
+ *  Loaded in background on first use. Changes are written in background, batched over FLUSH_DELAY_MS
+ */
+class PermissionOutcomePreferences implements PermissionOutcomeStore.OutcomeWriter {
+
+    private static final String PREFERENCES_NAME = "permission_outcomes";
+    private static final String KEY_OUTCOME_SUFFIX = ".outcome";
+    private static final String KEY_TIMESTAMP_SUFFIX = ".timestamp";
+    private static final long FLUSH_DELAY_MS = 1000;
+
+    private final PermissionOutcomeStore outcomeStore;
+    private final Map<String, Outcome> dirtyOutcomes = new HashMap<>(); // Guarded by dirtyOutcomes
+
+    private volatile SharedPreferences preferences = null;
+    private volatile boolean loadStarted = false;
+    private boolean flushScheduled = false; // Guarded by dirtyOutcomes
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PermissionOutcomeStore");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    PermissionOutcomePreferences(PermissionOutcomeStore outcomeStore) {
+        this.outcomeStore = outcomeStore;
+        outcomeStore.setOutcomeWriter(this);
+    }
+
+    /**
+     * Loading the stored outcomes in background, only the first call has effect
+     *
+     * @param context
+     */
+    void load(Context context) {
+        if (loadStarted) {
+            return;
+        }
+        synchronized (this) {
+            if (loadStarted) {
+                return;
+            }
+            loadStarted = true;
+        }
+
+        final Context applicationContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences sharedPreferences = applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+                for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
+                    String key = entry.getKey();
+                    if (!key.endsWith(KEY_OUTCOME_SUFFIX) || !(entry.getValue() instanceof Integer)) {
+                        continue;
+                    }
+                    String permission = key.substring(0, key.length() - KEY_OUTCOME_SUFFIX.length());
+                    long timestamp = sharedPreferences.getLong(permission + KEY_TIMESTAMP_SUFFIX, 0);
+
+                    // Outcomes recorded while loading are newer
+                    outcomeStore.restore(permission, (Integer) entry.getValue(), timestamp);
+                }
+                preferences = sharedPreferences;
+                scheduleFlush();
+            }
+        });
+    }
+
+    @Override
+    public void write(String permission, int outcome, long timestamp) {
+        synchronized (dirtyOutcomes) {
+            dirtyOutcomes.put(permission, new Outcome(outcome, timestamp));
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        synchronized (dirtyOutcomes) {
+            if (flushScheduled || dirtyOutcomes.isEmpty() || preferences == null) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writing all the changes in one commit, background thread only
+     */
+    private void flush() {
+        Map<String, Outcome> outcomesToWrite;
+        synchronized (dirtyOutcomes) {
+            outcomesToWrite = new HashMap<>(dirtyOutcomes);
+            dirtyOutcomes.clear();
+            flushScheduled = false;
+        }
+
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Map.Entry<String, Outcome> entry : outcomesToWrite.entrySet()) {
+            editor.putInt(entry.getKey() + KEY_OUTCOME_SUFFIX, entry.getValue().outcome);
+            editor.putLong(entry.getKey() + KEY_TIMESTAMP_SUFFIX, entry.getValue().timestamp);
+        }
+        editor.commit();
+    }
+
+    private static class Outcome {
+
+        final int outcome;
+        final long timestamp;
+
+        Outcome(int outcome, long timestamp) {
+            this.outcome = outcome;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.cashdivider.permissions;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.ViewGroup;
+
+/**
+ * Permission flow of the application - PermissionFlow running on the main Looper, with the activities as hosts
+ * and the PermissionEngine (Dexter by default) for the system requests, dialogs and snack-bars
+ */
+public class PermissionUtils {
+
+    public static final long REQUEST_BATCHING_DISABLED = PermissionFlow.REQUEST_BATCHING_DISABLED;
+    public static final long REQUEST_BATCHING_ONE_FRAME = PermissionFlow.REQUEST_BATCHING_ONE_FRAME;
+
+    private static final AndroidPermissionPlatform permissionPlatform = new AndroidPermissionPlatform();
+    private static final PermissionFlow permissionFlow = new PermissionFlow(permissionPlatform, new HandlerPermissionScheduler());
+    private static final PermissionOutcomePreferences permissionOutcomePreferences = new PermissionOutcomePreferences(permissionFlow.getPermissionOutcomeStore());
+    private static volatile boolean activityLifecycleObserverRegistered = false; // Internally used
+
+    static {
+        permissionFlow.setPermissionTracer(new SystemPermissionTracer());
+    }
+
+    /**
+     * Checking permission
+     *
+     *  If rootView activity is null - on rationale will show text as dialog
+     *  If rootView activity is is not null - on rationale will show text as snack bar
+     *  If message is null - will not show any rationale dialog/snack-bar
+     *  If a request for the same/overlapping permissions is in progress - will wait for its result
+     *  If the activity is recreated (rotation) - the request continues, calling again from the new instance replaces the old callback
+     *  If the permissions are already granted - the callback runs directly when called from the main thread,
+     *  pass a pre-built String[] (static final) as permissions to avoid any allocation
+     *
+     * @param activity - Activity context
+     * @param rootView - ViewGroup rootView = (ViewGroup) view.findViewById(android.R.id.content);
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param permissionListenerCallback - Callback for getting permission approved/denied state
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc
+     */
+    public static void checkPermission(final Activity activity, final ViewGroup rootView, final String message, final PermissionListenerCallback permissionListenerCallback, final String... permissions) {
+        registerActivityLifecycleObserver(activity);
+        permissionFlow.checkPermission(activity, rootView, message, permissionListenerCallback, permissions);
+    }
+
+    /**
+     * Checking permissions given as PermissionTable bits
+     *
+     *  Same flow as checkPermission with the permission strings, the already granted check
+     *  does not look up any string
+     *
+     * @param activity - Activity context
+     * @param rootView - ViewGroup rootView = (ViewGroup) view.findViewById(android.R.id.content);
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param permissionListenerCallback - Callback for getting permission approved/denied state
+     * @param permissionMask - PermissionTable.READ_SMS | PermissionTable.READ_CONTACTS, etc - denied if empty
+     */
+    public static void checkPermission(final Activity activity, final ViewGroup rootView, final String message, final PermissionListenerCallback permissionListenerCallback, final long permissionMask) {
+        registerActivityLifecycleObserver(activity);
+        permissionFlow.checkPermission(activity, rootView, message, permissionListenerCallback, permissionMask);
+    }
+
+    /**
+     * Checking permissions with a result for each permission
+     *
+     *  Same flow as checkPermission with PermissionListenerCallback, but the callback receives
+     *  the granted/permanently denied state of every requested permission from one request
+     *
+     * @param activity - Activity context
+     * @param rootView - ViewGroup rootView = (ViewGroup) view.findViewById(android.R.id.content);
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param permissionResultCallback - Callback for getting the state of each permission
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc (max PermissionResult.MAX_PERMISSIONS)
+     */
+    public static void checkPermission(final Activity activity, final ViewGroup rootView, final String message, final PermissionResultCallback permissionResultCallback, final String... permissions) {
+        registerActivityLifecycleObserver(activity);
+        permissionFlow.checkPermission(activity, rootView, message, permissionResultCallback, permissions);
+    }
+
+    /**
+     * Checking permissions without any UI, usable from any thread
+     *
+     *  The result is computed on the calling thread (no main thread hop) and the returned future is already done.
+     *  Permanently denied state is not known without a request - use requestPermissionAsync for it
+     *
+     * @param context - Any context
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc (max PermissionResult.MAX_PERMISSIONS)
+     * @return
+     */
+    public static PermissionFuture checkPermissionAsync(final Context context, final String... permissions) {
+        registerActivityLifecycleObserver(context);
+        return permissionFlow.checkPermissionAsync(context, permissions);
+    }
+
+    /**
+     * Requesting permissions, usable from any thread
+     *
+     *  If all the permissions are already granted the returned future is already done,
+     *  otherwise the same flow as checkPermission runs on the main thread with the given activity
+     *
+     * @param activity - Activity context
+     * @param rootView - ViewGroup rootView = (ViewGroup) view.findViewById(android.R.id.content);
+     * @param message - Message of the rationale dialog/snack-bar
+     * @param permissions - Manifest.permission.GET_ACCOUNTS, Manifest.permission.READ_CONTACTS, etc (max PermissionResult.MAX_PERMISSIONS)
+     * @return
+     */
+    public static PermissionFuture requestPermissionAsync(final Activity activity, final ViewGroup rootView, final String message, final String... permissions) {
+        registerActivityLifecycleObserver(activity);
+        return permissionFlow.requestPermissionAsync(activity, rootView, message, permissions);
+    }
+
+    /**
+     * Batching the permission requests - the requests made in the same frame/window are merged
+     * into one rationale dialog and one system prompt, each callback receives the result for its own permissions
+     *
+     * @param windowMs - REQUEST_BATCHING_ONE_FRAME, REQUEST_BATCHING_DISABLED or the window length in milliseconds
+     */
+    public static void setRequestBatchingWindow(long windowMs) {
+        permissionFlow.setRequestBatchingWindow(windowMs);
+    }
+
+    /**
+     * Asking with the system dialog also for the other declared permissions of the requested groups
+     *
+     *  They are granted by the same dialog, so later requests for them do not show any dialog or pause the activity.
+     *  Callbacks still receive only the permissions they asked for
+     *
+     * @param enabled
+     */
+    public static void setPermissionGroupExpansion(boolean enabled) {
+        permissionFlow.setPermissionGroupExpansion(enabled);
+    }
+
+    /**
+     * Reading in main thread idle time the state of all the declared permissions of the groups of a feature,
+     * next checks of them are answered from the cache. Nothing is shown to the user
+     *
+     * @param context
+     * @param permissionMask - PermissionTable bits of the feature
+     */
+    public static void prefetchPermissionGroups(final Context context, final long permissionMask) {
+        if (context == null) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        registerActivityLifecycleObserver(applicationContext);
+        permissionFlow.prefetchPermissionGroups(applicationContext, permissionMask);
+    }
+
+    /**
+     * Settings button of the snack-bar clicked
+     *
+     * @param context
+     * @param request - null if the metrics are not enabled
+     */
+    static void onSettingsSnackbarAction(Context context, Object request) {
+        permissionFlow.onSettingsAction(context, request);
+    }
+
+    /**
+     * Replacing the engine running the system requests and dialogs, null to restore the Dexter engine.
+     * Set it before any request
+     *
+     * @param engine
+     */
+    public static void setPermissionEngine(PermissionEngine engine) {
+        permissionPlatform.setPermissionEngine(engine != null ? engine : new DexterPermissionEngine());
+        permissionFlow.invalidatePermissionCache();
+    }
+
+    /**
+     * Replacing the tracer of the permission flow stages (ChromeTracePermissionTracer for JVM tests),
+     * null to restore the android.os.Trace tracer. Set it before any request - sections are ended by the tracer that began them
+     *
+     * @param tracer
+     */
+    public static void setPermissionTracer(PermissionTracer tracer) {
+        permissionFlow.setPermissionTracer(tracer != null ? tracer : new SystemPermissionTracer());
+    }
+
+    /**
+     * Limiting the new requests for the permissions the user has denied (cooldown with backoff, prompts per session),
+     * null for no limit. Requests not allowed get the cached states right away, without any UI
+     *
+     * @param policy
+     */
+    public static void setPermissionRequestPolicy(PermissionRequestPolicy policy) {
+        permissionFlow.setPermissionRequestPolicy(policy);
+    }
+
+    /**
+     * Registering the listener for the permission flow stages, null to remove it
+     *
+     * @param permissionMetricsListener
+     */
+    public static void setPermissionMetricsListener(PermissionMetricsListener permissionMetricsListener) {
+        permissionFlow.setPermissionMetricsListener(permissionMetricsListener);
+    }
+
+    /**
+     * Checking if the permission(permissions) are already approved
+     *
+     *  Grant states are served from an in-memory cache, the system is asked only on the first check
+     *  of a permission and after the application came back to foreground
+     *
+     * @param context
+     * @param requestedPermissions
+     * @return
+     */
+    public static boolean isPermissionAlreadyApproved(Context context, String... requestedPermissions) {
+        registerActivityLifecycleObserver(context);
+        return permissionFlow.isPermissionAlreadyApproved(context, requestedPermissions);
+    }
+
+    /**
+     * Checking if the permissions given as PermissionTable bits are already approved
+     *
+     *  Answered from the cached bits when all of them are granted, otherwise each permission is checked
+     *
+     * @param context
+     * @param permissionMask - PermissionTable.READ_SMS | PermissionTable.READ_CONTACTS, etc
+     * @return false if the mask is empty or has bits not in PermissionTable
+     */
+    public static boolean isPermissionAlreadyApproved(Context context, long permissionMask) {
+        registerActivityLifecycleObserver(context);
+        return permissionFlow.isPermissionAlreadyApproved(context, permissionMask);
+    }
+
+    /**
+     * Listening for the grant state changes of the permissions, instead of polling isPermissionAlreadyApproved
+     *
+     *  The listener is called on the main thread only on a real change: granted/denied by a request,
+     *  or changed from Settings (checked once for all the listeners, shortly after an activity is resumed)
+     *
+     * @param context
+     * @param permissionStateListener
+     * @param permissions - Manifest.permission.READ_CONTACTS, etc - none for all the dangerous permissions of PermissionTable
+     */
+    public static void addPermissionStateListener(Context context, PermissionStateListener permissionStateListener, String... permissions) {
+        if (context == null || permissionStateListener == null) {
+            return;
+        }
+        registerActivityLifecycleObserver(context);
+        permissionFlow.addPermissionStateListener(context.getApplicationContext(), permissionStateListener, permissions);
+    }
+
+    /**
+     * Removing the state listener
+     *
+     * @param permissionStateListener
+     */
+    public static void removePermissionStateListener(PermissionStateListener permissionStateListener) {
+        permissionFlow.removePermissionStateListener(permissionStateListener);
+    }
+
+    /**
+     * Reading (once) in background the grant state of all the PermissionTable permissions in one batch,
+     * the first checks are then answered from the cache without asking the system on the main thread
+     *
+     *  Started at process start by PermissionInitProvider, shows as "PermissionFlow.preloadPermissionSnapshot" trace section
+     *
+     * @param context
+     */
+    public static void preloadPermissionSnapshot(Context context) {
+        if (context == null) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        registerActivityLifecycleObserver(applicationContext);
+        permissionFlow.preloadPermissionSnapshot(applicationContext);
+    }
+
+    /**
+     * Getting the startup snapshot, without blocking
+     *
+     * @return null until the background read is done (or never started)
+     */
+    public static PermissionSnapshot getPermissionSnapshot() {
+        return permissionFlow.getPermissionSnapshot();
+    }
+
+    /**
+     * Number of permission checks answered from the cache
+     *
+     * @return
+     */
+    public static long getPermissionCacheHitCount() {
+        return permissionFlow.getPermissionCacheHitCount();
+    }
+
+    /**
+     * Number of permission checks that had to ask the system
+     *
+     * @return
+     */
+    public static long getPermissionCacheMissCount() {
+        return permissionFlow.getPermissionCacheMissCount();
+    }
+
+    /**
+     * Resetting the cache hit/miss counters
+     */
+    public static void resetPermissionCacheStatistics() {
+        permissionFlow.resetPermissionCacheStatistics();
+    }
+
+    /**
+     * Dropping the cached grant states, next checks will ask the system again
+     */
+    public static void invalidatePermissionCache() {
+        permissionFlow.invalidatePermissionCache();
+    }
+
+    /**
+     * Registering (once) for the application activities lifecycle
+     *
+     * @param context
+     */
+    private static void registerActivityLifecycleObserver(Context context) {
+        if (activityLifecycleObserverRegistered || context == null) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext();
+        if (!(applicationContext instanceof Application)) {
+            return;
+        }
+        synchronized (PermissionUtils.class) {
+            if (activityLifecycleObserverRegistered) {
+                return;
+            }
+            ((Application) applicationContext).registerActivityLifecycleCallbacks(new ActivityLifecycleObserver());
+            permissionOutcomePreferences.load(applicationContext);
+            activityLifecycleObserverRegistered = true;
+        }
+    }
+
+    /**
+     * Permission callback listener
+     */
+    public interface PermissionListenerCallback extends PermissionFlow.GrantCallback {
+    }
+
+    /**
+     * Permission callback listener with the state of each permission
+     */
+    public interface PermissionResultCallback extends PermissionFlow.ResultCallback {
+    }
+
+    /**
+     * Revalidating the cached grant states when the application comes back to foreground,
+     * attaching the recreated activities to their requests
+     */
+    private static class ActivityLifecycleObserver implements Application.ActivityLifecycleCallbacks {
+
+        private int startedActivities = 0;
+        private boolean inBackground = false; // Not on process start - the startup snapshot is fresh
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            if (startedActivities++ == 0 && inBackground) {
+                // Back from background - the user could have changed the permissions from Settings
+                permissionFlow.onForeground();
+            }
+            inBackground = false;
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (startedActivities > 0) {
+                startedActivities--;
+            }
+            // Stopped for a configuration change - started again right away
+            inBackground = startedActivities == 0 && !activity.isChangingConfigurations();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            permissionFlow.onHostResumed(activity);
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            permissionFlow.onHostDestroyed(activity, activity.isChangingConfigurations());
+        }
+    }
+}
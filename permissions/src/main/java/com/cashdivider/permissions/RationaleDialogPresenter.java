@@ -0,0 +1,210 @@
+package com.cashdivider.permissions;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.DialogInterface;
+
+import com.afollestad.materialdialogs.DialogAction;
+import com.afollestad.materialdialogs.MaterialDialog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dialog reused for all the requests of an Activity, one per dialog kind (PermissionEngine.DIALOG_RATIONALE, DIALOG_SETTINGS)
+ *
+ *  The dialog is built on first use, next requests only rebind the message, button and callbacks - a settings dialog
+ *  still showing is not replaced by the rationale of the next request.
+ *  The presenters and their dialogs hold the Activity, so they are kept in a plain map and must be released
+ *  explicitly when the Activity is destroyed (PermissionEngine.releaseDialog from onActivityDestroyed). Main thread only
+ */
+class RationaleDialogPresenter extends MaterialDialog.ButtonCallback implements DialogInterface.OnDismissListener {
+
+    private static final int DIALOG_KIND_COUNT = 2;
+    private static final Map<Activity, RationaleDialogPresenter[]> presenters = new HashMap<>(); // By dialog kind, until release
+
+    private final Context context;
+    private MaterialDialog dialog = null;
+    private int ignoredDismissCount = 0; // Dismissed by the buttons, the request is already executed
+
+    private PermissionEngine.DialogCallback dialogCallback = null;
+    private boolean permissionRequestExecuted = true;
+
+    private RationaleDialogPresenter(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Getting the presenter of the activity for the dialog kind
+     *
+     * @param context
+     * @param dialogKind - PermissionEngine.DIALOG_RATIONALE or DIALOG_SETTINGS
+     * @return
+     */
+    static RationaleDialogPresenter get(Context context, int dialogKind) {
+        if (!(context instanceof Activity)) {
+            return new RationaleDialogPresenter(context);
+        }
+        Activity activity = (Activity) context;
+        RationaleDialogPresenter[] activityPresenters = presenters.get(activity);
+        if (activityPresenters == null) {
+            activityPresenters = new RationaleDialogPresenter[DIALOG_KIND_COUNT];
+            presenters.put(activity, activityPresenters);
+        }
+        RationaleDialogPresenter presenter = activityPresenters[dialogKind];
+        if (presenter == null) {
+            presenter = new RationaleDialogPresenter(activity);
+            activityPresenters[dialogKind] = presenter;
+        }
+        return presenter;
+    }
+
+    /**
+     * Releasing the dialogs of the destroyed activity
+     *
+     * @param activity
+     * @param cancelPending - false to keep the pending requests (activity recreated, shown again by the new instance)
+     */
+    static void release(Activity activity, boolean cancelPending) {
+        RationaleDialogPresenter[] activityPresenters = presenters.remove(activity);
+        if (activityPresenters == null) {
+            return;
+        }
+        for (RationaleDialogPresenter presenter : activityPresenters) {
+            if (presenter != null) {
+                presenter.release(cancelPending);
+            }
+        }
+    }
+
+    private void release(boolean cancelPending) {
+        if (dialog == null) {
+            return;
+        }
+        if (!cancelPending) {
+            permissionRequestExecuted = true;
+            clearBinding();
+        }
+        // Otherwise cancelled by the dismiss, not by the user
+        if (dialog.isShowing()) {
+            dialog.dismiss();
+        }
+        dialog = null;
+    }
+
+    /**
+     * Showing the dialog
+     *
+     *  Positive button - continue, otherwise cancel (user cancelled only from the negative button).
+     *  A pending binding (dialog still showing) is replaced and cancelled
+     *
+     * @param message
+     * @param positiveText
+     * @param negativeText - null for no negative button
+     * @param dialogCallback
+     */
+    void show(String message, String positiveText, String negativeText, PermissionEngine.DialogCallback dialogCallback) {
+        final PermissionEngine.DialogCallback previousDialogCallback = this.dialogCallback;
+        final boolean previousPermissionRequestExecuted = this.permissionRequestExecuted;
+
+        this.dialogCallback = dialogCallback;
+        this.permissionRequestExecuted = false;
+
+        if (dialog == null) {
+            dialog = new MaterialDialog.Builder(context)
+                    .callback(this)
+                    .dismissListener(this)
+                    .content(message)
+                    .positiveText(positiveText)
+                    .negativeText(negativeText)
+                    .autoDismiss(false)
+                    .build();
+        } else {
+            dialog.setContent(message);
+            dialog.setActionButton(DialogAction.POSITIVE, positiveText);
+            dialog.setActionButton(DialogAction.NEGATIVE, negativeText);
+        }
+        dialog.show();
+
+        if (!previousPermissionRequestExecuted) {
+            cancel(previousDialogCallback, false);
+        }
+    }
+
+    @Override
+    public void onPositive(MaterialDialog dialog) {
+        super.onPositive(dialog);
+
+        final PermissionEngine.DialogCallback dialogCallback = this.dialogCallback;
+        if (!markExecuted()) {
+            return;
+        }
+
+        if (dialogCallback != null) {
+            dialogCallback.onContinue();
+        }
+    }
+
+    @Override
+    public void onNegative(MaterialDialog dialog) {
+        super.onNegative(dialog);
+
+        final PermissionEngine.DialogCallback dialogCallback = this.dialogCallback;
+        if (markExecuted()) {
+            cancel(dialogCallback, true);
+        }
+    }
+
+    @Override
+    public void onNeutral(MaterialDialog dialog) {
+        super.onNeutral(dialog);
+
+        final PermissionEngine.DialogCallback dialogCallback = this.dialogCallback;
+        if (markExecuted()) {
+            cancel(dialogCallback, false);
+        }
+    }
+
+    @Override
+    public void onDismiss(DialogInterface dialog) {
+        if (ignoredDismissCount > 0) {
+            ignoredDismissCount--;
+            return;
+        }
+        // Dismissed without any button (back, outside touch, activity destroyed)
+        if (!permissionRequestExecuted) {
+            permissionRequestExecuted = true;
+            cancel(dialogCallback, false);
+        }
+        clearBinding();
+    }
+
+    /**
+     * Marking the current binding as executed and dismissing the dialog
+     *
+     * @return false if it was already executed
+     */
+    private boolean markExecuted() {
+        if (permissionRequestExecuted) {
+            return false;
+        }
+        permissionRequestExecuted = true;
+        clearBinding();
+
+        if (dialog != null && dialog.isShowing()) {
+            ignoredDismissCount++;
+            dialog.dismiss();
+        }
+        return true;
+    }
+
+    private void clearBinding() {
+        dialogCallback = null;
+    }
+
+    private static void cancel(PermissionEngine.DialogCallback dialogCallback, boolean userCancelled) {
+        if (dialogCallback != null) {
+            dialogCallback.onCancel(userCancelled);
+        }
+    }
+}
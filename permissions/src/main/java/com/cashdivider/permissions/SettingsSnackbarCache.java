@@ -0,0 +1,90 @@
+package com.cashdivider.permissions;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Settings snack-bar actions reused per (rootView, message)
+ *
+ *  The button text is looked up and the click listener built once, entries of a rootView are dropped
+ *  when it is detached from the window. Entries are immutable - a snack-bar of another request (metrics enabled)
+ *  replaces the entry, snack-bars already shown keep theirs. Main thread only
+ */
+class SettingsSnackbarCache implements View.OnAttachStateChangeListener {
+
+    private final Map<View, Map<String, Entry>> entries = new WeakHashMap<>();
+
+    /**
+     * Getting the entry of the rootView, message and request, created on first use
+     *
+     * @param rootView
+     * @param message
+     * @param request - null if the metrics are not enabled
+     * @return
+     */
+    Entry get(ViewGroup rootView, String message, Object request) {
+        Map<String, Entry> rootViewEntries = entries.get(rootView);
+        if (rootViewEntries == null) {
+            rootViewEntries = new HashMap<>();
+            entries.put(rootView, rootViewEntries);
+            rootView.addOnAttachStateChangeListener(this);
+        }
+        Entry entry = rootViewEntries.get(message);
+        if (entry == null) {
+            entry = new Entry(rootView.getContext(), request);
+            rootViewEntries.put(message, entry);
+        } else if (entry.request != request) {
+            entry = new Entry(entry, request);
+            rootViewEntries.put(message, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View view) {
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View view) {
+        entries.remove(view);
+        view.removeOnAttachStateChangeListener(this);
+    }
+
+    /**
+     * Button text and click listener of a snack-bar, the click opens the application settings
+     */
+    static class Entry implements View.OnClickListener {
+
+        final String actionText;
+        private final Context applicationContext;
+        private final Object request; // Only kept for the metrics
+
+        Entry(Context context, Object request) {
+            this.applicationContext = context.getApplicationContext();
+            this.actionText = context.getString(R.string.textPermissionRationaleButton);
+            this.request = request;
+        }
+
+        /**
+         * Same snack-bar for another request
+         *
+         * @param entry
+         * @param request
+         */
+        Entry(Entry entry, Object request) {
+            this.applicationContext = entry.applicationContext;
+            this.actionText = entry.actionText;
+            this.request = request;
+        }
+
+        @Override
+        public void onClick(View view) {
+            PermissionUtils.onSettingsSnackbarAction(applicationContext, request);
+        }
+    }
+}
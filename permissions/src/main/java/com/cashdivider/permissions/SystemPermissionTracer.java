@@ -0,0 +1,89 @@
+package com.cashdivider.permissions;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+
+/**
+ * Default tracer - android.os.Trace sections, visible in systrace/Perfetto
+ *
+ *  Async sections are public only from API 29 (Trace.beginAsyncSection), not available with the compile SDK
+ *  of the library - they are called by reflection, like androidx.tracing does: the public methods on API 29+,
+ *  the hidden Trace.asyncTraceBegin/End (API 18+) before. Not recorded if the methods can not be found
+ */
+public class SystemPermissionTracer implements PermissionTracer {
+
+    private static final int VERSION_CODE_Q = 29;
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+        AsyncTrace.invoke(AsyncTrace.BEGIN, name, cookie);
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+        AsyncTrace.invoke(AsyncTrace.END, name, cookie);
+    }
+
+    /**
+     * Async trace methods, looked up once on first use
+     */
+    private static class AsyncTrace {
+
+        static final int BEGIN = 0;
+        static final int END = 1;
+
+        private static final long traceTag; // Hidden API only
+        private static final Method isTagEnabled; // Hidden API only
+        private static final Method[] methods = new Method[2];
+
+        static {
+            long tag = 0;
+            Method tagEnabled = null;
+            try {
+                if (Build.VERSION.SDK_INT >= VERSION_CODE_Q) {
+                    methods[BEGIN] = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                    methods[END] = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+                } else {
+                    tag = Trace.class.getField("TRACE_TAG_APP").getLong(null);
+                    tagEnabled = Trace.class.getMethod("isTagEnabled", long.class);
+                    methods[BEGIN] = Trace.class.getMethod("asyncTraceBegin", long.class, String.class, int.class);
+                    methods[END] = Trace.class.getMethod("asyncTraceEnd", long.class, String.class, int.class);
+                }
+            } catch (Exception e) {
+                // Not available - async sections are not recorded
+                methods[BEGIN] = null;
+                methods[END] = null;
+            }
+            traceTag = tag;
+            isTagEnabled = tagEnabled;
+        }
+
+        static void invoke(int method, String name, int cookie) {
+            Method traceMethod = methods[method];
+            if (traceMethod == null) {
+                return;
+            }
+            try {
+                if (isTagEnabled == null) {
+                    traceMethod.invoke(null, name, cookie);
+                } else if ((Boolean) isTagEnabled.invoke(null, traceTag)) {
+                    traceMethod.invoke(null, traceTag, name, cookie);
+                }
+            } catch (Exception e) {
+                // Tracing must never break the permission flow
+            }
+        }
+    }
+}